@@ -0,0 +1,6 @@
+# FileSystemBinary is called from native code by name, see cpp-adapter.cpp
+-keep class com.filesystem.FileSystemBinary {
+  native <methods>;
+  void readFile(byte[], double, double, java.lang.String, long);
+  void writeFile(byte[], java.nio.ByteBuffer, boolean, java.lang.String, long);
+}
@@ -0,0 +1,164 @@
+#include <jni.h>
+#include <jsi/jsi.h>
+#include <fbjni/fbjni.h>
+#include <ReactCommon/CallInvoker.h>
+#include <ReactCommon/CallInvokerHolder.h>
+
+#include <stdexcept>
+#include <string>
+
+#include "react-native-file-system.h"
+
+namespace {
+
+using namespace facebook;
+
+JavaVM *gJavaVm = nullptr;
+
+JNIEnv *getEnv() {
+  JNIEnv *env = nullptr;
+  if (gJavaVm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+    gJavaVm->AttachCurrentThread(&env, nullptr);
+  }
+  return env;
+}
+
+std::string takeExceptionMessage(JNIEnv *env) {
+  jthrowable throwable = env->ExceptionOccurred();
+  env->ExceptionClear();
+  jclass throwableClass = env->FindClass("java/lang/Throwable");
+  jmethodID getMessage = env->GetMethodID(throwableClass, "getMessage", "()Ljava/lang/String;");
+  auto message = static_cast<jstring>(env->CallObjectMethod(throwable, getMessage));
+  std::string result = "file system call failed";
+  if (env->ExceptionCheck()) env->ExceptionClear();
+  else if (message != nullptr) {
+    const char *chars = env->GetStringUTFChars(message, nullptr);
+    result = chars;
+    env->ReleaseStringUTFChars(message, chars);
+    env->DeleteLocalRef(message);
+  }
+  env->DeleteLocalRef(throwableClass);
+  env->DeleteLocalRef(throwable);
+  return result;
+}
+
+// passed as UTF-8 bytes, NewStringUTF expects modified UTF-8
+jbyteArray toBytes(JNIEnv *env, const std::string &value) {
+  jbyteArray bytes = env->NewByteArray(static_cast<jsize>(value.size()));
+  env->SetByteArrayRegion(bytes, 0, static_cast<jsize>(value.size()), reinterpret_cast<const jbyte *>(value.data()));
+  return bytes;
+}
+
+std::string fromBytes(JNIEnv *env, jbyteArray bytes) {
+  jsize length = env->GetArrayLength(bytes);
+  std::string value(static_cast<size_t>(length), '\0');
+  if (length > 0) env->GetByteArrayRegion(bytes, 0, length, reinterpret_cast<jbyte *>(&value[0]));
+  return value;
+}
+
+// null with the exception cleared when the method is missing, e.g. stripped by a minifier without the keep rules
+jmethodID getMethodId(JNIEnv *env, jclass clazz, const char *name, const char *signature) {
+  jmethodID method = env->GetMethodID(clazz, name, signature);
+  if (env->ExceptionCheck()) {
+    env->ExceptionClear();
+    return nullptr;
+  }
+  return method;
+}
+
+// FileSystemBinary.readFile and writeFile queue the I/O on a lane of the task runner and call back with the result
+class AndroidPlatform : public filesystem::Platform {
+ public:
+  AndroidPlatform(JNIEnv *env, jobject binary, jmethodID readFile, jmethodID writeFile, std::shared_ptr<react::CallInvoker> callInvoker)
+    : binary_(env->NewGlobalRef(binary)), readFile_(readFile), writeFile_(writeFile), callInvoker_(std::move(callInvoker)) {}
+  ~AndroidPlatform() override {
+    getEnv()->DeleteGlobalRef(binary_);
+  }
+
+  void readFile(const std::string &path, double offset, double length, const std::string &priority, int64_t requestId) override {
+    JNIEnv *env = getEnv();
+    jbyteArray jPath = toBytes(env, path);
+    jstring jPriority = env->NewStringUTF(priority.c_str());
+    env->CallVoidMethod(binary_, readFile_, jPath, offset, length, jPriority, static_cast<jlong>(requestId));
+    env->DeleteLocalRef(jPath);
+    env->DeleteLocalRef(jPriority);
+    if (env->ExceptionCheck()) throw std::runtime_error(takeExceptionMessage(env));
+  }
+
+  void writeFile(const std::string &path, const uint8_t *data, size_t size, bool append, const std::string &priority, int64_t requestId) override {
+    JNIEnv *env = getEnv();
+    static uint8_t empty = 0;
+    jbyteArray jPath = toBytes(env, path);
+    jobject jData = env->NewDirectByteBuffer(size > 0 ? const_cast<uint8_t *>(data) : &empty, static_cast<jlong>(size));
+    jstring jPriority = env->NewStringUTF(priority.c_str());
+    env->CallVoidMethod(binary_, writeFile_, jPath, jData, static_cast<jboolean>(append), jPriority, static_cast<jlong>(requestId));
+    env->DeleteLocalRef(jPath);
+    env->DeleteLocalRef(jData);
+    env->DeleteLocalRef(jPriority);
+    if (env->ExceptionCheck()) throw std::runtime_error(takeExceptionMessage(env));
+  }
+
+  void invokeOnJs(std::function<void()> fn) override {
+    callInvoker_->invokeAsync(std::move(fn));
+  }
+
+ private:
+  jobject binary_;
+  jmethodID readFile_;
+  jmethodID writeFile_;
+  std::shared_ptr<react::CallInvoker> callInvoker_;
+};
+
+} // namespace
+
+extern "C" JNIEXPORT jint JNI_OnLoad(JavaVM *vm, void *) {
+  gJavaVm = vm;
+  return jni::initialize(vm, [] {});
+}
+
+// false when the binding can not be installed, JS falls back to base64
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_filesystem_FileSystemBinary_nativeInstall(JNIEnv *env, jobject thiz, jlong jsiRuntimePointer, jobject jsCallInvokerHolder) {
+  auto *runtime = reinterpret_cast<jsi::Runtime *>(jsiRuntimePointer);
+  if (runtime == nullptr || jsCallInvokerHolder == nullptr) return JNI_FALSE;
+  jclass binaryClass = env->GetObjectClass(thiz);
+  jmethodID readFile = getMethodId(env, binaryClass, "readFile", "([BDDLjava/lang/String;J)V");
+  jmethodID writeFile = getMethodId(env, binaryClass, "writeFile", "([BLjava/nio/ByteBuffer;ZLjava/lang/String;J)V");
+  env->DeleteLocalRef(binaryClass);
+  if (readFile == nullptr || writeFile == nullptr) return JNI_FALSE;
+  auto holder = jni::alias_ref<react::CallInvokerHolder::javaobject>(
+    static_cast<react::CallInvokerHolder::javaobject>(jsCallInvokerHolder));
+  std::shared_ptr<react::CallInvoker> callInvoker = holder->cthis()->getCallInvoker();
+  if (callInvoker == nullptr) return JNI_FALSE;
+  filesystem::install(*runtime, std::make_shared<AndroidPlatform>(env, thiz, readFile, writeFile, callInvoker));
+  return JNI_TRUE;
+}
+
+// `buffer` is a direct buffer holding the bytes read, it is copied into an ArrayBuffer on the JS thread
+extern "C" JNIEXPORT void JNICALL
+Java_com_filesystem_FileSystemBinary_nativeResolveBuffer(JNIEnv *env, jclass, jlong requestId, jobject buffer, jint size) {
+  filesystem::Completion completion;
+  completion.hasData = true;
+  completion.size = static_cast<size_t>(size);
+  jobject bufferRef = env->NewGlobalRef(buffer);
+  completion.data = static_cast<const uint8_t *>(env->GetDirectBufferAddress(bufferRef));
+  completion.release = [bufferRef] {
+    getEnv()->DeleteGlobalRef(bufferRef);
+  };
+  filesystem::complete(static_cast<int64_t>(requestId), std::move(completion));
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_filesystem_FileSystemBinary_nativeResolveNumber(JNIEnv *, jclass, jlong requestId, jdouble value) {
+  filesystem::Completion completion;
+  completion.value = value;
+  filesystem::complete(static_cast<int64_t>(requestId), std::move(completion));
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_filesystem_FileSystemBinary_nativeReject(JNIEnv *env, jclass, jlong requestId, jbyteArray message) {
+  filesystem::Completion completion;
+  completion.error = fromBytes(env, message);
+  if (completion.error.empty()) completion.error = "file system call failed";
+  filesystem::complete(static_cast<int64_t>(requestId), std::move(completion));
+}
@@ -0,0 +1,237 @@
+package com.filesystem;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Write-behind appender for high frequency appendFile calls.
+ * Keeps one open stream per path and flushes its buffer by size, by time, on flush(path) and on teardown.
+ */
+public class Appender {
+  public static final int DEFAULT_FLUSH_SIZE = 64 * 1024;
+  public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+  // streams without appends for this long are closed
+  static final long IDLE_CLOSE_TIMEOUT = 30_000;
+
+  private final ReactApplicationContext context;
+  private final AsyncTask.TaskRunner taskRunner;
+  private final int flushSize;
+  private final long flushInterval;
+  @Nullable private final DiskUsage.Cache diskUsage;
+  private final HashMap<String, Entry> entries = new HashMap<>();
+  @Nullable private ScheduledFuture<?> flushFuture = null;
+
+  static class Entry {
+    final String path;
+    final OutputStream outputStream;
+    @Nullable final DiskUsage.Cache diskUsage;
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    long lastWrite = System.currentTimeMillis();
+    boolean closed = false;
+    // error of a background flush, reported by the next call on the path
+    @Nullable IOException error = null;
+    Entry(String path, OutputStream outputStream, @Nullable DiskUsage.Cache diskUsage) {
+      this.path = path;
+      this.outputStream = outputStream;
+      this.diskUsage = diskUsage;
+    }
+    void flush() throws IOException {
+      if (error != null) {
+        IOException e = error;
+        error = null;
+        throw e;
+      }
+      if (buffer.size() == 0) return;
+      try {
+        buffer.writeTo(outputStream);
+        outputStream.flush();
+      } finally {
+        buffer.reset();
+        // the size of the file and its parents changed
+        if (diskUsage != null) diskUsage.evict(path);
+      }
+    }
+    void close() throws IOException {
+      if (closed) return;
+      closed = true;
+      try {
+        flush();
+      } finally {
+        outputStream.close();
+      }
+    }
+  }
+
+  Appender(ReactApplicationContext context, AsyncTask.TaskRunner taskRunner, int flushSize, long flushInterval, @Nullable DiskUsage.Cache diskUsage) {
+    this.context = context;
+    this.taskRunner = taskRunner;
+    this.flushSize = flushSize;
+    this.flushInterval = flushInterval;
+    this.diskUsage = diskUsage;
+  }
+  Appender(ReactApplicationContext context, AsyncTask.TaskRunner taskRunner, @Nullable DiskUsage.Cache diskUsage) {
+    this(context, taskRunner, DEFAULT_FLUSH_SIZE, DEFAULT_FLUSH_INTERVAL, diskUsage);
+  }
+
+  public void append(String path, byte[] data) throws IOException {
+    while (true) {
+      Entry entry = getEntry(path);
+      synchronized (entry) {
+        // closed by the idle sweep in the meantime, open a new one
+        if (entry.closed) continue;
+        if (entry.error != null) entry.flush();
+        entry.buffer.write(data, 0, data.length);
+        entry.lastWrite = System.currentTimeMillis();
+        if (entry.buffer.size() >= flushSize) entry.flush();
+        return;
+      }
+    }
+  }
+
+  private Entry getEntry(String path) throws IOException {
+    String key = Utils.getPathKey(path);
+    synchronized (entries) {
+      Entry entry = entries.get(key);
+      if (entry != null) return entry;
+    }
+    // the per path task order guarantees there is only one opener of a path
+    Uri uri = Utils.createDocumentFileUri(context, path);
+    OutputStream outputStream = uri == null
+      ? Utils.createOutputStream(Utils.parsePathToFile(path), true)
+      : Utils.createOutputStream(context, uri, true);
+    Entry entry = new Entry(path, outputStream, diskUsage);
+    synchronized (entries) {
+      entries.put(key, entry);
+      if (flushFuture == null) flushFuture = taskRunner.schedule(this::flushPending, flushInterval, flushInterval);
+    }
+    return entry;
+  }
+
+  /**
+   * Write the buffered data of a path to storage.
+   */
+  public void flush(String path) throws IOException {
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(Utils.getPathKey(path));
+    }
+    if (entry == null) return;
+    synchronized (entry) {
+      entry.flush();
+    }
+  }
+
+  /**
+   * Flush and close the stream of a path, called before other calls modify the file.
+   */
+  public void release(String path) throws IOException {
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.remove(Utils.getPathKey(path));
+    }
+    if (entry == null) return;
+    synchronized (entry) {
+      entry.close();
+    }
+  }
+
+  /**
+   * Release the streams of a path and of everything below it, called before a directory is deleted or moved.
+   */
+  public void releaseTree(String path) throws IOException {
+    String key = Utils.getPathKey(path);
+    ArrayList<Entry> released = new ArrayList<>();
+    synchronized (entries) {
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Entry> next = iterator.next();
+        if (isInTree(next.getKey(), key)) {
+          released.add(next.getValue());
+          iterator.remove();
+        }
+      }
+    }
+    IOException error = null;
+    for (Entry entry : released) {
+      synchronized (entry) {
+        try {
+          entry.close();
+        } catch (IOException e) {
+          if (error == null) error = e;
+        }
+      }
+    }
+    if (error != null) throw error;
+  }
+  // document ids of a tree uri nest with an encoded slash
+  private static boolean isInTree(String key, String root) {
+    if (key.equals(root)) return true;
+    return key.startsWith(root.endsWith("/") ? root : root + "/") || key.startsWith(root + "%2F");
+  }
+
+  void flushPending() {
+    ArrayList<Entry> all;
+    ArrayList<Entry> idle = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      all = new ArrayList<>(entries.values());
+      for (Entry entry : all) {
+        if (now - entry.lastWrite > IDLE_CLOSE_TIMEOUT) idle.add(entry);
+      }
+      for (Entry entry : idle) entries.remove(Utils.getPathKey(entry.path));
+      if (entries.isEmpty() && flushFuture != null) {
+        flushFuture.cancel(false);
+        flushFuture = null;
+      }
+    }
+    for (Entry entry : all) {
+      synchronized (entry) {
+        if (entry.closed) continue;
+        try {
+          if (idle.contains(entry)) entry.close();
+          else entry.flush();
+        } catch (IOException e) {
+          Log.e("FileSystem", "flush appender failed: " + entry.path, e);
+          if (!entry.closed) entry.error = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Flush and close every stream, called on module teardown.
+   */
+  public void closeAll() {
+    ArrayList<Entry> all;
+    synchronized (entries) {
+      all = new ArrayList<>(entries.values());
+      entries.clear();
+      if (flushFuture != null) {
+        flushFuture.cancel(false);
+        flushFuture = null;
+      }
+    }
+    for (Entry entry : all) {
+      synchronized (entry) {
+        try {
+          entry.close();
+        } catch (IOException e) {
+          Log.e("FileSystem", "close appender failed: " + entry.path, e);
+        }
+      }
+    }
+  }
+}
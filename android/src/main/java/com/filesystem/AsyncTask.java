@@ -4,50 +4,432 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AsyncTask {
+  public static final int DEFAULT_POOL_SIZE = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+  public static final int DEFAULT_QUEUE_SIZE = 512;
+
+  /**
+   * Scheduling lanes, each lane has its own workers so that cheap calls are never
+   * queued behind long running transfers.
+   */
+  public enum Lane {
+    /** ls, stat, exists, mkdir, rename */
+    METADATA,
+    /** small reads and writes */
+    IO,
+    /** streaming work: cp, mv, gzip, unGzip, hash */
+    BULK;
+
+    /**
+     * Map a JS priority hint ("high" | "normal" | "low") to a lane.
+     */
+    public static Lane fromPriority(String priority, Lane defaultLane) {
+      if (priority == null) return defaultLane;
+      switch (priority) {
+        case "high": return METADATA;
+        case "normal": return IO;
+        case "low": return BULK;
+        default: return defaultLane;
+      }
+    }
+  }
+
   // https://stackoverflow.com/a/58767934
   public static class TaskRunner {
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // change according to your requirements
-    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[Lane.values().length];
+    private volatile boolean deliverOnMainThread = false;
+    @Nullable private Handler mainHandler = null;
+    // path key -> tasks touching that path, the head of each queue is running or about to run
+    private final HashMap<String, ArrayDeque<OrderedTask>> pathQueues = new HashMap<>();
+    // per lane, ordered tasks waiting in pathQueues for a task ahead of them, guarded by pathQueues
+    private final int[] blockedCounts = new int[Lane.values().length];
+    // task id -> cancellable calls that are queued or running
+    private final ConcurrentHashMap<String, TaskHandle> tasks = new ConcurrentHashMap<>();
+    private final AtomicInteger taskIdCounter = new AtomicInteger(0);
+    private final ScheduledThreadPoolExecutor timer;
+    @Nullable private ForkJoinPool forkJoinPool = null;
 
     public interface Callback<Object> {
       void onComplete(Object result);
     }
 
+    /**
+     * One bounded pool per lane, shared by every call of the module. Idle workers are reclaimed,
+     * and tasks beyond `queueSize` in a lane are rejected instead of piling up without limit.
+     */
+    public TaskRunner(int metadataPoolSize, int ioPoolSize, int bulkPoolSize, int queueSize) {
+      executors[Lane.METADATA.ordinal()] = createExecutor("FileSystem-meta", metadataPoolSize, queueSize);
+      executors[Lane.IO.ordinal()] = createExecutor("FileSystem-io", ioPoolSize, queueSize);
+      executors[Lane.BULK.ordinal()] = createExecutor("FileSystem-bulk", bulkPoolSize, queueSize);
+      timer = new ScheduledThreadPoolExecutor(1, new WorkerThreadFactory("FileSystem-timer"));
+      timer.setRemoveOnCancelPolicy(true);
+    }
+    public TaskRunner(int poolSize, int queueSize) {
+      this(poolSize, poolSize, Math.max(1, poolSize / 2), queueSize);
+    }
+    public TaskRunner() {
+      this(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_SIZE);
+    }
+
+    private static ThreadPoolExecutor createExecutor(String name, int poolSize, int queueSize) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+        30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueSize),
+        new WorkerThreadFactory(name));
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+
+    private ThreadPoolExecutor getExecutor(Lane lane) {
+      return executors[lane.ordinal()];
+    }
+
+    /**
+     * Work-stealing pool for calls that fan out over a directory tree. The call runs on its lane and waits
+     * while the subdirectories are spread over this pool, idle workers take the pending subdirectories of busy ones.
+     */
+    public synchronized ForkJoinPool getForkJoinPool() {
+      if (forkJoinPool == null) {
+        final AtomicInteger count = new AtomicInteger(1);
+        forkJoinPool = new ForkJoinPool(DEFAULT_POOL_SIZE, pool -> {
+          ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          thread.setName("FileSystem-tree-" + count.getAndIncrement());
+          return thread;
+        }, null, false);
+      }
+      return forkJoinPool;
+    }
+
+    /**
+     * Callbacks run on the worker thread by default, React Native promises can be settled from any thread.
+     * Enable this for callbacks that must run on the main thread, set by FileSystemPackage.
+     */
+    public void setDeliverOnMainThread(boolean deliverOnMainThread) {
+      this.deliverOnMainThread = deliverOnMainThread;
+    }
+
+    private <Object> void deliver(Callback<Object> callback, Object result) {
+      if (deliverOnMainThread) {
+        getMainHandler().post(() -> callback.onComplete(result));
+        return;
+      }
+      try {
+        callback.onComplete(result);
+      } catch (RuntimeException e) {
+        Log.e("TaskRunner", "callback error:", e);
+      }
+    }
+
+    private synchronized Handler getMainHandler() {
+      if (mainHandler == null) mainHandler = new Handler(Looper.getMainLooper());
+      return mainHandler;
+    }
+
     public <Object> void executeAsync(Callable<Object> callable, Callback<Object> callback) {
-      executor.execute(() -> {
+      executeAsync(Lane.IO, callable, callback);
+    }
+    public <Object> void executeAsync(Lane lane, Callable<Object> callable, Callback<Object> callback) {
+      executeAsync(lane, null, callable, callback);
+    }
+    public <Object> void executeAsync(Lane lane, @Nullable TaskHandle task, Callable<Object> callable, Callback<Object> callback) {
+      Runnable runnable = () -> {
+        Object result;
         try {
-          Object result = callable.call();
-          handler.post(() -> callback.onComplete(result));
+          if (task != null) {
+            task.throwIfCanceled();
+            task.markStarted();
+          }
+          result = callable.call();
         } catch (Exception e) {
-          handler.post(() -> callback.onComplete((Object) e));
+          result = (Object) e;
           Log.e("TaskRunner", "execute error:");
           e.printStackTrace();
         }
-      });
+        if (task != null) finishTask(task);
+        deliver(callback, result);
+      };
+      if (callable instanceof Callables.PathOrdered) {
+        executeOrdered(lane, ((Callables.PathOrdered) callable).getPathKeys(), runnable, (RejectedExecutionException e) -> {
+          if (task != null) finishTask(task);
+          deliver(callback, (Object) e);
+        });
+      } else getExecutor(lane).execute(runnable);
+    }
+
+    /**
+     * Run tasks that share a path key in submission order, tasks on different paths still run in parallel.
+     * A task with several keys starts once it is at the head of every key queue.
+     * Tasks waiting for their path count against the queue limit of their lane, together with the queued ones.
+     * @param onRejected called if the task is rejected after it waited for its path, a rejection before that is thrown
+     */
+    private void executeOrdered(Lane lane, String[] keys, Runnable runnable, Callback<RejectedExecutionException> onRejected) {
+      OrderedTask task = new OrderedTask(lane, getExecutor(lane), keys, runnable, onRejected);
+      synchronized (pathQueues) {
+        for (String key : task.keys) {
+          if (pathQueues.containsKey(key)) task.blockers++;
+        }
+        if (task.blockers > 0) {
+          if (task.executor.isShutdown()) throw new RejectedExecutionException("task runner is shut down");
+          if (blockedCounts[lane.ordinal()] >= task.executor.getQueue().remainingCapacity()) {
+            throw new RejectedExecutionException("too many pending tasks");
+          }
+          blockedCounts[lane.ordinal()]++;
+        }
+        for (String key : task.keys) {
+          ArrayDeque<OrderedTask> queue = pathQueues.get(key);
+          if (queue == null) {
+            queue = new ArrayDeque<>();
+            pathQueues.put(key, queue);
+          }
+          queue.add(task);
+        }
+        if (task.blockers > 0) return;
+      }
+      try {
+        task.executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        finishOrdered(task);
+        throw e;
+      }
+    }
+
+    private void finishOrdered(OrderedTask task) {
+      // a rejected successor finishes too and releases its own successors, looped instead of recursing
+      ArrayDeque<OrderedTask> finished = new ArrayDeque<>();
+      finished.add(task);
+      while (!finished.isEmpty()) {
+        OrderedTask done = finished.poll();
+        ArrayList<OrderedTask> ready = new ArrayList<>();
+        synchronized (pathQueues) {
+          for (String key : done.keys) {
+            ArrayDeque<OrderedTask> queue = pathQueues.get(key);
+            if (queue == null) continue;
+            queue.remove(done);
+            OrderedTask next = queue.peek();
+            if (next == null) pathQueues.remove(key);
+            else if (--next.blockers == 0) {
+              blockedCounts[next.lane.ordinal()]--;
+              ready.add(next);
+            }
+          }
+        }
+        for (OrderedTask next : ready) {
+          try {
+            next.executor.execute(next);
+          } catch (RejectedExecutionException e) {
+            // never run it on this thread, it may belong to another lane or to the caller of an unrelated task
+            next.onRejected.onComplete(new RejectedExecutionException(next.executor.isShutdown()
+              ? "task runner is shut down"
+              : "too many pending tasks"));
+            finished.add(next);
+          }
+        }
+      }
+    }
+
+    private class OrderedTask implements Runnable {
+      final Lane lane;
+      final ThreadPoolExecutor executor;
+      final String[] keys;
+      final Runnable runnable;
+      final Callback<RejectedExecutionException> onRejected;
+      int blockers = 0;
+      OrderedTask(Lane lane, ThreadPoolExecutor executor, String[] keys, Runnable runnable, Callback<RejectedExecutionException> onRejected) {
+        this.lane = lane;
+        this.executor = executor;
+        this.keys = new LinkedHashSet<>(Arrays.asList(keys)).toArray(new String[0]);
+        this.runnable = runnable;
+        this.onRejected = onRejected;
+      }
+      @Override
+      public void run() {
+        try {
+          runnable.run();
+        } finally {
+          finishOrdered(this);
+        }
+      }
+    }
+
+    public void runTask(Callable<Object> callable, Promise promise) {
+      runTask(Lane.IO, callable, promise);
+    }
+    public void runTask(Lane lane, Callable<Object> callable, Promise promise) {
+      runTask(lane, null, callable, promise);
+    }
+    public void runTask(Lane lane, @Nullable TaskHandle task, Callable<Object> callable, Promise promise) {
+      try {
+        executeAsync(lane, task, callable, (Object result) -> {
+          if (result instanceof Exception) {
+            promise.reject("-1", ((Exception) result).getMessage());
+          } else promise.resolve(result);
+        });
+      } catch (RejectedExecutionException err) {
+        if (task != null) finishTask(task);
+        promise.reject("-1", getExecutor(lane).isShutdown() ? "task runner is shut down" : "too many pending tasks");
+      } catch (Exception err) {
+        if (task != null) finishTask(task);
+        promise.reject("-1", err.getMessage());
+      }
+    }
+
+    /**
+     * Run many calls with at most `parallelism` of them in flight,
+     * resolves one array of `{ result }` or `{ error }` in call order.
+     */
+    public void runBatch(Lane[] lanes, Callable<Object>[] callables, int parallelism, Promise promise) {
+      new Batch(lanes, callables, promise).start(Math.max(1, parallelism));
+    }
+
+    private class Batch {
+      private final Lane[] lanes;
+      private final Callable<Object>[] callables;
+      private final Promise promise;
+      private final Object[] results;
+      private final AtomicInteger next = new AtomicInteger(0);
+      private final AtomicInteger remaining;
+      Batch(Lane[] lanes, Callable<Object>[] callables, Promise promise) {
+        this.lanes = lanes;
+        this.callables = callables;
+        this.promise = promise;
+        this.results = new Object[callables.length];
+        this.remaining = new AtomicInteger(callables.length);
+      }
+
+      void start(int parallelism) {
+        if (callables.length == 0) {
+          finish();
+          return;
+        }
+        for (int i = 0; i < parallelism; i++) runNext();
+      }
+
+      // a call rejected on submission completes on this thread, the loop moves on to the next one
+      // instead of recursing through complete, a long batch against a full queue would overflow the stack
+      private void runNext() {
+        while (true) {
+          int index = next.getAndIncrement();
+          if (index >= callables.length) return;
+          try {
+            executeAsync(lanes[index], callables[index], (Object result) -> complete(index, result));
+            return;
+          } catch (Exception err) {
+            if (settle(index, err)) return;
+          }
+        }
+      }
+
+      private void complete(int index, Object result) {
+        if (!settle(index, result)) runNext();
+      }
+
+      // @return true once the whole batch is settled
+      private boolean settle(int index, Object result) {
+        results[index] = result;
+        if (remaining.decrementAndGet() != 0) return false;
+        finish();
+        return true;
+      }
+
+      private void finish() {
+        WritableArray array = Arguments.createArray();
+        for (Object result : results) {
+          WritableMap map = Arguments.createMap();
+          if (result instanceof Exception) map.putString("error", ((Exception) result).getMessage());
+          else Utils.putValue(map, "result", result);
+          array.pushMap(map);
+        }
+        promise.resolve(array);
+      }
+    }
+
+    /**
+     * Register a cancellable call.
+     * @param taskId id chosen by the caller, a native one is generated when null
+     * @param timeout cancel the call this many milliseconds after submission, no limit when <= 0
+     */
+    public TaskHandle createTask(@Nullable String taskId, long timeout) {
+      TaskHandle task = new TaskHandle(taskId == null ? "native_" + taskIdCounter.incrementAndGet() : taskId);
+      tasks.put(task.id, task);
+      if (timeout > 0) {
+        task.timeoutFuture = timer.schedule(() -> task.cancel("task timeout"), timeout, TimeUnit.MILLISECONDS);
+      }
+      return task;
+    }
+
+    /**
+     * Run a periodic maintenance job on the timer thread.
+     */
+    public ScheduledFuture<?> schedule(Runnable runnable, long initialDelay, long period) {
+      return timer.scheduleWithFixedDelay(runnable, initialDelay, period, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean cancel(String taskId) {
+      TaskHandle task = tasks.get(taskId);
+      if (task == null) return false;
+      task.cancel("task canceled");
+      return true;
+    }
+
+    private void finishTask(TaskHandle task) {
+      tasks.remove(task.id, task);
+      if (task.timeoutFuture != null) task.timeoutFuture.cancel(false);
     }
+
     public void shutdown() {
-      executor.shutdown();
+      for (TaskHandle task : tasks.values()) task.cancel("task runner is shut down");
+      timer.shutdownNow();
+      synchronized (this) {
+        if (forkJoinPool != null) forkJoinPool.shutdownNow();
+      }
+      for (ThreadPoolExecutor executor : executors) executor.shutdown();
+      try {
+        for (ThreadPoolExecutor executor : executors) {
+          if (!executor.awaitTermination(3, TimeUnit.SECONDS)) executor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        for (ThreadPoolExecutor executor : executors) executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
-  public static void runTask(Callable<Object> callable, Promise promise) {
-    TaskRunner taskRunner = new TaskRunner();
-    try {
-      taskRunner.executeAsync(callable, (Object result) -> {
-        taskRunner.shutdown();
-        if (result instanceof Exception) {
-          promise.reject("-1", ((Exception) result).getMessage());
-        } else promise.resolve(result);
-      });
-    } catch (Exception err) {
-      promise.reject("-1", err.getMessage());
+  static class WorkerThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger(1);
+    WorkerThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + "-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
     }
   }
 }
@@ -1,83 +1,349 @@
 package com.filesystem;
 
+import androidx.annotation.Nullable;
+
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 public class Callables {
+  /**
+   * Calls that modify a path or must see all earlier writes to it, the task runner keeps them in submission order per path.
+   */
+  interface PathOrdered {
+    String[] getPathKeys();
+  }
+
+  /**
+   * Build the call of a batch operation, `args` follow the parameters of the module method.
+   */
+  static Callable<Object> fromOp(ReactApplicationContext context, @Nullable Appender appender, @Nullable DiskUsage.Cache diskUsage, ForkJoinPool pool, String op, ReadableArray args) {
+    switch (op) {
+      case "ls": return new Ls(context, args.getString(0));
+      case "readFile": return new ReadFile(context, args.getString(0), getString(args, 1, "utf8"), appender);
+      case "writeFile": return new WriteFile(context, args.getString(0), args.getString(1), getString(args, 2, "utf8"), appender, diskUsage);
+      case "appendFile": return new AppendFile(context, args.getString(0), args.getString(1), getString(args, 2, "utf8"), appender, false, diskUsage);
+      case "mkdir": return new Mkdir(context, args.getString(0), diskUsage);
+      case "stat": return new Stat(context, args.getString(0));
+      case "exists": return new Exists(context, args.getString(0));
+      case "unlink": return new Unlink(context, pool, args.getString(0), null, appender, diskUsage);
+      case "cp": return new Cp(context, args.getString(0), args.getString(1), null, appender, diskUsage);
+      case "mv": return new Mv(context, args.getString(0), args.getString(1), null, appender, diskUsage);
+      case "rename": return new Rename(context, args.getString(0), args.getString(1), appender, diskUsage);
+      case "gzipFile": return new GzipFile(context, args.getString(0), args.getString(1), null, diskUsage);
+      case "unGzipFile": return new UnGzipFile(context, args.getString(0), args.getString(1), null, diskUsage);
+      case "gzipString": return new GzipString(args.getString(0), getString(args, 1, "utf8"));
+      case "unGzipString": return new UnGzipString(args.getString(0), getString(args, 1, "utf8"));
+      case "hash": return new Hash(context, args.getString(0), getString(args, 1, "md5"), null, appender);
+      default: throw new IllegalArgumentException("unknown op: " + op);
+    }
+  }
+  private static String getString(ReadableArray args, int index, String defaultValue) {
+    return args.size() > index && !args.isNull(index) ? args.getString(index) : defaultValue;
+  }
+  // drop the cached du entries of written paths
+  private static void evict(@Nullable DiskUsage.Cache diskUsage, String... paths) {
+    if (diskUsage == null) return;
+    for (String path : paths) diskUsage.evict(path);
+  }
+
   static class Ls implements Callable<Object> {
     private final ReactApplicationContext context;
     private final String filePath;
+    private final int offset;
+    private final int limit;
+    @Nullable private final ListingCache listings;
     public Ls(ReactApplicationContext context, String filePath) {
+      this(context, filePath, 0, -1, null);
+    }
+    public Ls(ReactApplicationContext context, String filePath, int offset, int limit, @Nullable ListingCache listings) {
       this.context = context;
       this.filePath = filePath;
+      this.offset = offset;
+      this.limit = limit;
+      this.listings = listings;
     }
     @Override
     public WritableArray call() throws IOException {
-      return FileSystem.ls(this.context, this.filePath);
+      if (this.listings == null) return FileSystem.ls(this.context, this.filePath);
+      return FileSystem.ls(this.context, this.filePath, this.offset, this.limit, this.listings);
+    }
+  }
+  static class LsStream implements Callable<Object> {
+    private final ReactApplicationContext context;
+    private final String filePath;
+    private final int chunkSize;
+    private final FileSystemEvent event;
+    private final TaskHandle task;
+    public LsStream(ReactApplicationContext context, String filePath, int chunkSize, FileSystemEvent event, TaskHandle task) {
+      this.context = context;
+      this.filePath = filePath;
+      this.chunkSize = chunkSize;
+      this.event = event;
+      this.task = task;
+    }
+    @Override
+    public Integer call() throws IOException {
+      return FileSystem.lsStream(this.context, this.filePath, this.chunkSize, this.event, this.task);
     }
   }
-  static class ReadFile implements Callable<Object> {
+  static class Walk implements Callable<Object> {
+    private final ReactApplicationContext context;
+    private final ForkJoinPool pool;
+    private final String filePath;
+    private final FileWalker.Filter filter;
+    private final int chunkSize;
+    private final FileSystemEvent event;
+    private final TaskHandle task;
+    public Walk(ReactApplicationContext context, ForkJoinPool pool, String filePath, FileWalker.Filter filter, int chunkSize, FileSystemEvent event, TaskHandle task) {
+      this.context = context;
+      this.pool = pool;
+      this.filePath = filePath;
+      this.filter = filter;
+      this.chunkSize = chunkSize;
+      this.event = event;
+      this.task = task;
+    }
+    @Override
+    public Integer call() throws IOException {
+      return FileWalker.walk(this.context, this.pool, this.filePath, this.filter, this.chunkSize, this.event, this.task);
+    }
+  }
+  static class Du implements Callable<Object> {
+    private final ReactApplicationContext context;
+    private final ForkJoinPool pool;
+    private final String filePath;
+    private final boolean refresh;
+    private final TaskHandle task;
+    private final DiskUsage.Cache cache;
+    public Du(ReactApplicationContext context, ForkJoinPool pool, DiskUsage.Cache cache, String filePath, boolean refresh, TaskHandle task) {
+      this.context = context;
+      this.pool = pool;
+      this.cache = cache;
+      this.filePath = filePath;
+      this.refresh = refresh;
+      this.task = task;
+    }
+    @Override
+    public WritableMap call() throws IOException {
+      return DiskUsage.du(this.context, this.pool, this.cache, this.filePath, this.refresh, this.task);
+    }
+  }
+  static class ReadFile implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String filePath;
     private final String encoding;
-    public ReadFile(ReactApplicationContext context, String filePath, String encoding) {
+    private final long offset;
+    private final long length;
+    @Nullable private final Appender appender;
+    public ReadFile(ReactApplicationContext context, String filePath, String encoding, @Nullable Appender appender) {
+      this(context, filePath, encoding, 0, -1, appender);
+    }
+    public ReadFile(ReactApplicationContext context, String filePath, String encoding, long offset, long length, @Nullable Appender appender) {
       this.context = context;
       this.filePath = filePath;
       this.encoding = encoding;
+      this.offset = offset;
+      this.length = length;
+      this.appender = appender;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
     }
     @Override
     public String call() throws IOException {
-      return FileSystem.readFile(this.context, this.filePath, this.encoding);
+      if (this.appender != null) this.appender.flush(this.filePath);
+      return FileSystem.readFile(this.context, this.filePath, this.encoding, this.offset, this.length);
+    }
+  }
+  static class ReadBinary implements Callable<Object>, PathOrdered {
+    private final ReactApplicationContext context;
+    private final String filePath;
+    private final long offset;
+    private final long length;
+    @Nullable private final Appender appender;
+    public ReadBinary(ReactApplicationContext context, String filePath, long offset, long length, @Nullable Appender appender) {
+      this.context = context;
+      this.filePath = filePath;
+      this.offset = offset;
+      this.length = length;
+      this.appender = appender;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
+    }
+    @Override
+    public ByteBuffer call() throws IOException {
+      if (this.appender != null) this.appender.flush(this.filePath);
+      return FileSystem.readFileBuffer(this.context, this.filePath, this.offset, this.length);
+    }
+  }
+  static class ReadLines implements Callable<Object> {
+    private final ReactApplicationContext context;
+    private final String filePath;
+    private final int startLine;
+    private final int count;
+    @Nullable private final Appender appender;
+    @Nullable private final LineReader.Cache lineIndexes;
+    public ReadLines(ReactApplicationContext context, String filePath, int startLine, int count, @Nullable Appender appender, @Nullable LineReader.Cache lineIndexes) {
+      this.context = context;
+      this.filePath = filePath;
+      this.startLine = startLine;
+      this.count = count;
+      this.appender = appender;
+      this.lineIndexes = lineIndexes;
+    }
+    @Override
+    public WritableArray call() throws IOException {
+      if (this.appender != null) this.appender.flush(this.filePath);
+      return LineReader.readLines(this.context, this.lineIndexes, this.filePath, this.startLine, this.count);
     }
   }
-  static class WriteFile implements Callable<Object> {
+  static class Tail implements Callable<Object> {
+    private final ReactApplicationContext context;
+    private final String filePath;
+    private final int count;
+    @Nullable private final Appender appender;
+    public Tail(ReactApplicationContext context, String filePath, int count, @Nullable Appender appender) {
+      this.context = context;
+      this.filePath = filePath;
+      this.count = count;
+      this.appender = appender;
+    }
+    @Override
+    public WritableArray call() throws IOException {
+      if (this.appender != null) this.appender.flush(this.filePath);
+      return LineReader.tail(this.context, this.filePath, this.count);
+    }
+  }
+  static class WriteFile implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String filePath;
     private final String data;
     private final String encoding;
-    public WriteFile(ReactApplicationContext context, String filePath, String data, String encoding) {
+    @Nullable private final Appender appender;
+    private final boolean atomic;
+    private final boolean durable;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public WriteFile(ReactApplicationContext context, String filePath, String data, String encoding, @Nullable Appender appender, @Nullable DiskUsage.Cache diskUsage) {
+      this(context, filePath, data, encoding, appender, false, false, diskUsage);
+    }
+    public WriteFile(ReactApplicationContext context, String filePath, String data, String encoding, @Nullable Appender appender, boolean atomic, boolean durable, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.filePath = filePath;
       this.data = data;
       this.encoding = encoding;
+      this.appender = appender;
+      this.atomic = atomic;
+      this.durable = durable;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
     }
     @Override
     public Object call() throws IOException {
-      FileSystem.writeFile(this.context, this.filePath, this.data, this.encoding);
+      if (this.appender != null) this.appender.release(this.filePath);
+      try {
+        FileSystem.writeFile(this.context, this.filePath, this.data, this.encoding, this.atomic, this.durable);
+      } finally {
+        evict(this.diskUsage, this.filePath);
+      }
       return null;
     }
   }
-  static class AppendFile implements Callable<Object> {
+  static class WriteBinary implements Callable<Object>, PathOrdered {
+    private final ReactApplicationContext context;
+    private final String filePath;
+    private final ByteBuffer data;
+    private final boolean append;
+    @Nullable private final Appender appender;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public WriteBinary(ReactApplicationContext context, String filePath, ByteBuffer data, boolean append, @Nullable Appender appender, @Nullable DiskUsage.Cache diskUsage) {
+      this.context = context;
+      this.filePath = filePath;
+      this.data = data;
+      this.append = append;
+      this.appender = appender;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
+    }
+    @Override
+    public Integer call() throws IOException {
+      if (this.appender != null) this.appender.release(this.filePath);
+      try {
+        return FileSystem.writeFileBuffer(this.context, this.filePath, this.data, this.append);
+      } finally {
+        evict(this.diskUsage, this.filePath);
+      }
+    }
+  }
+  static class AppendFile implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String filePath;
     private final String data;
     private final String encoding;
-    public AppendFile(ReactApplicationContext context, String filePath, String data, String encoding) {
+    @Nullable private final Appender appender;
+    private final boolean buffered;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public AppendFile(ReactApplicationContext context, String filePath, String data, String encoding, @Nullable Appender appender, boolean buffered, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.filePath = filePath;
       this.data = data;
       this.encoding = encoding;
+      this.appender = appender;
+      this.buffered = buffered;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
     }
     @Override
     public Object call() throws IOException {
-      FileSystem.appendFile(this.context, this.filePath, this.data, this.encoding);
+      if (this.appender != null) {
+        if (this.buffered) {
+          this.appender.append(this.filePath, Utils.decodeData(this.data, this.encoding));
+          return null;
+        }
+        this.appender.release(this.filePath);
+      }
+      try {
+        FileSystem.appendFile(this.context, this.filePath, this.data, this.encoding);
+      } finally {
+        evict(this.diskUsage, this.filePath);
+      }
       return null;
     }
   }
   static class Mkdir implements Callable<Object> {
     private final ReactApplicationContext context;
     private final String filePath;
-    public Mkdir(ReactApplicationContext context, String filePath) {
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public Mkdir(ReactApplicationContext context, String filePath, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.filePath = filePath;
+      this.diskUsage = diskUsage;
     }
     @Override
     public WritableMap call() {
-      return FileSystem.mkdir(this.context, this.filePath);
+      try {
+        return FileSystem.mkdir(this.context, this.filePath);
+      } finally {
+        evict(this.diskUsage, this.filePath);
+      }
     }
   }
   static class Stat implements Callable<Object> {
@@ -104,90 +370,181 @@ public class Callables {
       return FileSystem.exists(this.context, this.filePath);
     }
   }
-  static class Unlink implements Callable<Object> {
+  static class Unlink implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String filePath;
-    public Unlink(ReactApplicationContext context, String filePath) {
+    @Nullable private final Appender appender;
+    private final ForkJoinPool pool;
+    @Nullable private final TaskHandle task;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public Unlink(ReactApplicationContext context, ForkJoinPool pool, String filePath, @Nullable TaskHandle task, @Nullable Appender appender, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
+      this.pool = pool;
       this.filePath = filePath;
+      this.task = task;
+      this.appender = appender;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
     }
     @Override
     public Object call() throws IOException {
-      FileSystem.unlink(this.context, this.filePath);
+      if (this.appender != null) this.appender.releaseTree(this.filePath);
+      try {
+        FileSystem.unlink(this.context, this.pool, this.filePath, this.task);
+      } finally {
+        evict(this.diskUsage, this.filePath);
+      }
       return null;
     }
   }
-  static class Cp implements Callable<Object> {
+  static class Cp implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String fromPath;
     private final String toPath;
-    public Cp(ReactApplicationContext context, String fromPath, String toPath) {
+    @Nullable private final TaskHandle task;
+    @Nullable private final Appender appender;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public Cp(ReactApplicationContext context, String fromPath, String toPath, @Nullable TaskHandle task, @Nullable Appender appender, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.fromPath = fromPath;
       this.toPath = toPath;
+      this.task = task;
+      this.appender = appender;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.toPath)};
     }
     @Override
     public Object call() throws IOException {
-      FileSystem.cp(this.context, this.fromPath, this.toPath);
+      if (this.appender != null) {
+        this.appender.flush(this.fromPath);
+        this.appender.release(this.toPath);
+      }
+      try {
+        FileSystem.cp(this.context, this.fromPath, this.toPath, this.task);
+      } finally {
+        evict(this.diskUsage, this.toPath);
+      }
       return null;
     }
   }
-  static class Mv implements Callable<Object> {
+  static class Mv implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String fromPath;
     private final String toPath;
-    public Mv(ReactApplicationContext context, String fromPath, String toPath) {
+    @Nullable private final TaskHandle task;
+    @Nullable private final Appender appender;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public Mv(ReactApplicationContext context, String fromPath, String toPath, @Nullable TaskHandle task, @Nullable Appender appender, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.fromPath = fromPath;
       this.toPath = toPath;
+      this.task = task;
+      this.appender = appender;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.fromPath), Utils.getPathKey(this.toPath)};
     }
     @Override
     public Object call() throws IOException {
-      FileSystem.mv(this.context, this.fromPath, this.toPath);
+      if (this.appender != null) {
+        this.appender.releaseTree(this.fromPath);
+        this.appender.releaseTree(this.toPath);
+      }
+      try {
+        FileSystem.mv(this.context, this.fromPath, this.toPath, this.task);
+      } finally {
+        evict(this.diskUsage, this.fromPath, this.toPath);
+      }
       return null;
     }
   }
-  static class Rename implements Callable<Object> {
+  static class Rename implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String filePath;
     private final String name;
-    public Rename(ReactApplicationContext context, String filePath, String name) {
+    @Nullable private final Appender appender;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public Rename(ReactApplicationContext context, String filePath, String name, @Nullable Appender appender, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.filePath = filePath;
       this.name = name;
+      this.appender = appender;
+      this.diskUsage = diskUsage;
     }
     @Override
-    public Object call() {
-      return FileSystem.rename(this.context, this.filePath, this.name);
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
+    }
+    @Override
+    public Object call() throws IOException {
+      if (this.appender != null) this.appender.releaseTree(this.filePath);
+      try {
+        return FileSystem.rename(this.context, this.filePath, this.name);
+      } finally {
+        // the renamed entry has the same parent
+        evict(this.diskUsage, this.filePath);
+      }
     }
   }
-  static class GzipFile implements Callable<Object> {
+  static class GzipFile implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String fromPath;
     private final String toPath;
-    public GzipFile(ReactApplicationContext context, String fromPath, String toPath) {
+    @Nullable private final TaskHandle task;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public GzipFile(ReactApplicationContext context, String fromPath, String toPath, @Nullable TaskHandle task, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.fromPath = fromPath;
       this.toPath = toPath;
+      this.task = task;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.toPath)};
     }
     @Override
     public Object call() throws IOException {
-      FileSystem.gzipFile(this.context, this.fromPath, this.toPath);
+      try {
+        FileSystem.gzipFile(this.context, this.fromPath, this.toPath, this.task);
+      } finally {
+        evict(this.diskUsage, this.toPath);
+      }
       return null;
     }
   }
-  static class UnGzipFile implements Callable<Object> {
+  static class UnGzipFile implements Callable<Object>, PathOrdered {
     private final ReactApplicationContext context;
     private final String fromPath;
     private final String toPath;
-    public UnGzipFile(ReactApplicationContext context, String fromPath, String toPath) {
+    @Nullable private final TaskHandle task;
+    @Nullable private final DiskUsage.Cache diskUsage;
+    public UnGzipFile(ReactApplicationContext context, String fromPath, String toPath, @Nullable TaskHandle task, @Nullable DiskUsage.Cache diskUsage) {
       this.context = context;
       this.fromPath = fromPath;
       this.toPath = toPath;
+      this.task = task;
+      this.diskUsage = diskUsage;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.toPath)};
     }
     @Override
     public Object call() throws IOException {
-      FileSystem.unGzipFile(this.context, this.fromPath, this.toPath);
+      try {
+        FileSystem.unGzipFile(this.context, this.fromPath, this.toPath, this.task);
+      } finally {
+        evict(this.diskUsage, this.toPath);
+      }
       return null;
     }
   }
@@ -219,15 +576,152 @@ public class Callables {
     private final ReactApplicationContext context;
     private final String filePath;
     private final String algorithm;
-    public Hash(ReactApplicationContext context, String filePath, String algorithm) {
+    @Nullable private final TaskHandle task;
+    @Nullable private final Appender appender;
+    public Hash(ReactApplicationContext context, String filePath, String algorithm, @Nullable TaskHandle task, @Nullable Appender appender) {
       this.context = context;
       this.filePath = filePath;
       this.algorithm = algorithm;
+      this.task = task;
+      this.appender = appender;
     }
     @Override
     public Object call() throws Exception {
-      return FileSystem.hash(this.context, this.filePath, this.algorithm);
+      if (this.appender != null) this.appender.flush(this.filePath);
+      return FileSystem.hash(this.context, this.filePath, this.algorithm, this.task);
+    }
+  }
+  static class Search implements Callable<Object> {
+    private final ReactApplicationContext context;
+    private final String filePath;
+    private final String pattern;
+    private final boolean regex;
+    private final boolean caseInsensitive;
+    private final int maxMatches;
+    @Nullable private final TaskHandle task;
+    @Nullable private final Appender appender;
+    public Search(ReactApplicationContext context, String filePath, String pattern, boolean regex, boolean caseInsensitive, int maxMatches, @Nullable TaskHandle task, @Nullable Appender appender) {
+      this.context = context;
+      this.filePath = filePath;
+      this.pattern = pattern;
+      this.regex = regex;
+      this.caseInsensitive = caseInsensitive;
+      this.maxMatches = maxMatches;
+      this.task = task;
+      this.appender = appender;
+    }
+    @Override
+    public WritableArray call() throws IOException {
+      if (this.appender != null) this.appender.flush(this.filePath);
+      return FileSearch.search(this.context, this.filePath, this.pattern, this.regex, this.caseInsensitive, this.maxMatches, this.task);
+    }
+  }
+  static class Flush implements Callable<Object>, PathOrdered {
+    private final Appender appender;
+    private final String filePath;
+    public Flush(Appender appender, String filePath) {
+      this.appender = appender;
+      this.filePath = filePath;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{Utils.getPathKey(this.filePath)};
+    }
+    @Override
+    public Object call() throws IOException {
+      this.appender.flush(this.filePath);
+      return null;
+    }
+  }
+  static class Open implements Callable<Object> {
+    private final FileHandles fileHandles;
+    private final String filePath;
+    private final String mode;
+    public Open(FileHandles fileHandles, String filePath, String mode) {
+      this.fileHandles = fileHandles;
+      this.filePath = filePath;
+      this.mode = mode;
+    }
+    @Override
+    public Object call() throws IOException {
+      return fileHandles.open(this.filePath, this.mode);
+    }
+  }
+  static class Read implements Callable<Object>, PathOrdered {
+    private final FileHandles fileHandles;
+    private final int handle;
+    private final int length;
+    private final String encoding;
+    public Read(FileHandles fileHandles, int handle, int length, String encoding) {
+      this.fileHandles = fileHandles;
+      this.handle = handle;
+      this.length = length;
+      this.encoding = encoding;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{"handle:" + this.handle};
+    }
+    @Override
+    public Object call() throws IOException {
+      return fileHandles.read(this.handle, this.length, this.encoding);
+    }
+  }
+  static class Write implements Callable<Object>, PathOrdered {
+    private final FileHandles fileHandles;
+    private final int handle;
+    private final String data;
+    private final String encoding;
+    public Write(FileHandles fileHandles, int handle, String data, String encoding) {
+      this.fileHandles = fileHandles;
+      this.handle = handle;
+      this.data = data;
+      this.encoding = encoding;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{"handle:" + this.handle};
+    }
+    @Override
+    public Object call() throws IOException {
+      return fileHandles.write(this.handle, this.data, this.encoding);
+    }
+  }
+  static class Seek implements Callable<Object>, PathOrdered {
+    private final FileHandles fileHandles;
+    private final int handle;
+    private final long offset;
+    private final String whence;
+    public Seek(FileHandles fileHandles, int handle, long offset, String whence) {
+      this.fileHandles = fileHandles;
+      this.handle = handle;
+      this.offset = offset;
+      this.whence = whence;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{"handle:" + this.handle};
+    }
+    @Override
+    public Object call() throws IOException {
+      return (double) fileHandles.seek(this.handle, this.offset, this.whence);
+    }
+  }
+  static class Close implements Callable<Object>, PathOrdered {
+    private final FileHandles fileHandles;
+    private final int handle;
+    public Close(FileHandles fileHandles, int handle) {
+      this.fileHandles = fileHandles;
+      this.handle = handle;
+    }
+    @Override
+    public String[] getPathKeys() {
+      return new String[]{"handle:" + this.handle};
+    }
+    @Override
+    public Object call() throws IOException {
+      fileHandles.close(this.handle);
+      return null;
     }
   }
-
 }
@@ -0,0 +1,242 @@
+package com.filesystem;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Total size of a directory tree, subdirectories are summed in parallel on a fork/join pool.
+ * The files of each directory are cached while its modified time is unchanged, a repeated call only reads the
+ * modified time of each directory of an unchanged tree. A file changed in place does not change the modified time
+ * of its directory, calls of the module that write evict the written path, other writers are seen once the
+ * directory changes or the call asks for a refresh.
+ * Symbolic links are not followed and only regular files are counted.
+ */
+public class DiskUsage {
+  static final int MAX_CACHED_DIRECTORIES = 20_000;
+  // FAT and exFAT store the modified time in 2 second steps, a directory changed within the step it was
+  // listed in would keep its time, it is cached once its time is older than that
+  static final long MODIFIED_TIME_GRANULARITY = 2000;
+
+  /**
+   * Directory entries of du calls, one cache per module.
+   */
+  static class Cache {
+    private final Map<String, DirectoryEntry> directories = new LinkedHashMap<String, DirectoryEntry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, DirectoryEntry> eldest) {
+        return size() > MAX_CACHED_DIRECTORIES;
+      }
+    };
+
+    @Nullable
+    synchronized DirectoryEntry get(String path) {
+      return directories.get(Utils.getPathKey(path));
+    }
+
+    synchronized void put(String path, DirectoryEntry entry) {
+      directories.put(Utils.getPathKey(path), entry);
+    }
+
+    /**
+     * Drop a written path, its ancestors and, for a moved or deleted directory, everything below it.
+     * The next du lists them again.
+     */
+    synchronized void evict(String path) {
+      String key = Utils.getPathKey(path);
+      Iterator<String> iterator = directories.keySet().iterator();
+      while (iterator.hasNext()) {
+        String cached = iterator.next();
+        if (isInTree(key, cached) || isInTree(cached, key)) iterator.remove();
+      }
+    }
+    // document ids of a tree uri nest with an encoded slash
+    private static boolean isInTree(String key, String root) {
+      if (key.equals(root)) return true;
+      return key.startsWith(root.endsWith("/") ? root : root + "/") || key.startsWith(root + "%2F");
+    }
+  }
+
+  // the direct children of a directory
+  static class DirectoryEntry {
+    final long lastModified;
+    final long size;
+    final int files;
+    final ArrayList<String> subdirectories;
+    DirectoryEntry(long lastModified, long size, int files, ArrayList<String> subdirectories) {
+      this.lastModified = lastModified;
+      this.size = size;
+      this.files = files;
+      this.subdirectories = subdirectories;
+    }
+  }
+
+  static class Usage {
+    long size;
+    int files;
+    int directories;
+    Usage(long size, int files, int directories) {
+      this.size = size;
+      this.files = files;
+      this.directories = directories;
+    }
+    void add(Usage usage) {
+      size += usage.size;
+      files += usage.files;
+      directories += usage.directories;
+    }
+  }
+
+  private final ReactApplicationContext context;
+  private final Cache cache;
+  private final TaskHandle task;
+  private final boolean refresh;
+
+  private DiskUsage(ReactApplicationContext context, Cache cache, TaskHandle task, boolean refresh) {
+    this.context = context;
+    this.cache = cache;
+    this.task = task;
+    this.refresh = refresh;
+  }
+
+  /**
+   * @param refresh ignore the cached directories and read the whole tree again
+   * @return `{ path, size, files, directories, children }`, the children are the files and directories directly in
+   * the path with the totals of their trees, largest first
+   */
+  public static WritableMap du(ReactApplicationContext reactContext, ForkJoinPool pool, Cache cache, String path, boolean refresh, TaskHandle task) throws IOException {
+    DiskUsage diskUsage = new DiskUsage(reactContext, cache, task, refresh);
+    FsFile root = new FsFile(reactContext, path);
+    root.readStat();
+    if (root.isFile()) return buildUsage(path, null, false, new Usage(root.length(), 1, 0));
+    if (!root.isDirectory()) throw new IOException("directory not found: " + path);
+    ArrayList<FsFile> files = root.ls();
+    ArrayList<FsFile> children = new ArrayList<>();
+    // the task of each child directory, null for a file
+    ArrayList<DirectoryTask> subtasks = new ArrayList<>();
+    for (FsFile file : files) {
+      file.readStat();
+      if (file.isDirectory()) {
+        DirectoryTask subtask = diskUsage.new DirectoryTask(file.getPath(), file);
+        pool.execute(subtask);
+        children.add(file);
+        subtasks.add(subtask);
+      } else if (file.isFile()) {
+        children.add(file);
+        subtasks.add(null);
+      }
+    }
+    ArrayList<Usage> usages = new ArrayList<>();
+    Usage total = new Usage(0, 0, 0);
+    try {
+      for (int i = 0; i < children.size(); i++) {
+        DirectoryTask subtask = subtasks.get(i);
+        Usage usage = subtask == null ? new Usage(children.get(i).length(), 1, 0) : subtask.join();
+        usages.add(usage);
+        total.add(usage);
+        if (subtask != null) total.directories++;
+      }
+    } catch (RuntimeException e) {
+      for (DirectoryTask subtask : subtasks) if (subtask != null) subtask.cancel(false);
+      // the pool may rethrow a copy of a worker exception without its message
+      task.throwIfCanceled();
+      throw e;
+    }
+
+    ArrayList<Integer> order = new ArrayList<>();
+    for (int i = 0; i < children.size(); i++) order.add(i);
+    Collections.sort(order, (a, b) -> Long.compare(usages.get(b).size, usages.get(a).size));
+    WritableArray childList = Arguments.createArray();
+    for (int i : order) {
+      FsFile file = children.get(i);
+      childList.pushMap(buildUsage(file.getPath(), file.getName(), file.isDirectory(), usages.get(i)));
+    }
+    WritableMap result = buildUsage(path, null, true, total);
+    result.putArray("children", childList);
+    return result;
+  }
+
+  private static WritableMap buildUsage(String path, @Nullable String name, boolean isDirectory, Usage usage) {
+    WritableMap map = Arguments.createMap();
+    map.putString("path", path);
+    if (name != null) map.putString("name", name);
+    map.putBoolean("isDirectory", isDirectory);
+    map.putDouble("size", usage.size);
+    map.putInt("files", usage.files);
+    map.putInt("directories", usage.directories);
+    return map;
+  }
+
+  private class DirectoryTask extends RecursiveTask<Usage> {
+    private final String path;
+    @Nullable private final FsFile dir;
+    DirectoryTask(String path, @Nullable FsFile dir) {
+      this.path = path;
+      this.dir = dir;
+    }
+
+    @Override
+    protected Usage compute() {
+      task.throwIfCanceled();
+      FsFile dir = this.dir;
+      if (dir == null) {
+        dir = new FsFile(context, path);
+        dir.readStat();
+      }
+      // read before the listing, a change made during the listing moves the time past the cached one
+      long lastModified = dir.lastModified();
+      DirectoryEntry entry = null;
+      if (!refresh && lastModified > 0) {
+        entry = cache.get(path);
+        if (entry != null && entry.lastModified != lastModified) entry = null;
+      }
+      ArrayList<DirectoryTask> subtasks = new ArrayList<>();
+      if (entry == null) {
+        ArrayList<FsFile> files;
+        try {
+          files = dir.ls();
+        } catch (IOException e) {
+          return new Usage(0, 0, 0);
+        }
+        long size = 0;
+        int count = 0;
+        ArrayList<String> subdirectories = new ArrayList<>();
+        for (FsFile file : files) {
+          file.readStat();
+          if (file.isDirectory()) {
+            String subdirectory = file.getPath();
+            subdirectories.add(subdirectory);
+            subtasks.add(new DirectoryTask(subdirectory, file));
+          } else if (file.isFile()) {
+            size += file.length();
+            count++;
+          }
+        }
+        entry = new DirectoryEntry(lastModified, size, count, subdirectories);
+        // providers that do not report the modified time are never cached
+        if (lastModified > 0 && System.currentTimeMillis() - lastModified >= MODIFIED_TIME_GRANULARITY) {
+          cache.put(path, entry);
+        }
+      } else {
+        for (String subdirectory : entry.subdirectories) subtasks.add(new DirectoryTask(subdirectory, null));
+      }
+
+      Usage usage = new Usage(entry.size, entry.files, entry.subdirectories.size());
+      invokeAll(subtasks);
+      for (DirectoryTask subtask : subtasks) usage.add(subtask.join());
+      return usage;
+    }
+  }
+}
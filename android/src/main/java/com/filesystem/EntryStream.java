@@ -0,0 +1,77 @@
+package com.filesystem;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Sends the file entries of a task to JS in chunks, entries can be pushed from any thread.
+ * JS matches the chunk and end events to its call by the task id.
+ */
+class EntryStream {
+  private final FileSystemEvent event;
+  private final String chunkEventName;
+  private final TaskHandle task;
+  private final int chunkSize;
+  @Nullable private WritableArray chunk = null;
+  private int chunkLength = 0;
+  private long chunkStart = 0;
+  private int total = 0;
+
+  EntryStream(FileSystemEvent event, String chunkEventName, TaskHandle task, int chunkSize) {
+    this.event = event;
+    this.chunkEventName = chunkEventName;
+    this.task = task;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Add an entry, the chunk is sent once it holds `chunkSize` entries.
+   */
+  synchronized void push(WritableMap entry) {
+    if (chunk == null) {
+      chunk = Arguments.createArray();
+      chunkStart = System.nanoTime();
+    }
+    chunk.pushMap(entry);
+    total++;
+    if (++chunkLength >= chunkSize) flush();
+  }
+
+  /**
+   * Send the pending entries early if the oldest of them has waited for `maxDelay` milliseconds,
+   * so the sparse results of a long call still arrive while it runs.
+   */
+  synchronized void flushIfDue(long maxDelay) {
+    if (chunk != null && System.nanoTime() - chunkStart >= maxDelay * 1_000_000) flush();
+  }
+
+  synchronized void flush() {
+    if (chunk == null) return;
+    WritableMap params = Arguments.createMap();
+    params.putString("taskId", task.id);
+    params.putArray("entries", chunk);
+    chunk = null;
+    chunkLength = 0;
+    event.sendEvent(chunkEventName, params);
+  }
+
+  synchronized int getTotal() {
+    return total;
+  }
+
+  /**
+   * Send the end event, entries that are still pending are dropped.
+   */
+  synchronized void end(String endEventName, @Nullable String error) {
+    chunk = null;
+    chunkLength = 0;
+    WritableMap params = Arguments.createMap();
+    params.putString("taskId", task.id);
+    params.putInt("total", total);
+    params.putString("error", error);
+    event.sendEvent(endEventName, params);
+  }
+}
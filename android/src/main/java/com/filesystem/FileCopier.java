@@ -0,0 +1,114 @@
+package com.filesystem;
+
+import android.net.Uri;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copy engine of cp and mv, works on file descriptors so plain files and content uris take the same path.
+ * A source with a known size is copied in the kernel by FileChannel.transferTo,
+ * a pipe from a provider falls back to a reused direct buffer of the worker thread.
+ */
+public class FileCopier {
+  // cancellation and progress are checked between chunks
+  static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+  static final int BUFFER_SIZE = 1024 * 1024;
+
+  private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  };
+
+  /**
+   * Copy a file to a path or a content uri, the target is created the same way as the target of writeFile.
+   * The partial output is removed when the task is canceled.
+   */
+  public static long copy(ReactApplicationContext context, String fromPath, String toPath, @Nullable TaskHandle task) throws IOException {
+    // open the source first, a missing source must not create the target document
+    ParcelFileDescriptor source = Utils.openFileDescriptor(context, fromPath, "r");
+    Uri uri;
+    try {
+      uri = Utils.createDocumentFileUri(context, toPath);
+    } catch (IOException | RuntimeException e) {
+      source.close();
+      throw e;
+    }
+    return copy(context, source, uri, uri == null ? Utils.parsePathToFile(toPath) : null, task);
+  }
+
+  /**
+   * Copy to a created document or a plain file, the source descriptor is closed.
+   */
+  public static long copy(ReactApplicationContext context, ParcelFileDescriptor source, @Nullable Uri toUri, @Nullable File toFile, @Nullable TaskHandle task) throws IOException {
+    return copy(context, source, toUri, toFile, false, task);
+  }
+  /**
+   * @param sync flush the target to storage before returning, for a move that deletes the source next
+   */
+  public static long copy(ReactApplicationContext context, ParcelFileDescriptor source, @Nullable Uri toUri, @Nullable File toFile, boolean sync, @Nullable TaskHandle task) throws IOException {
+    try (FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(source)) {
+      try (FileOutputStream outputStream = openOutput(context, toUri, toFile)) {
+        long count = copy(inputStream.getChannel(), source.getStatSize(), outputStream.getChannel(), task);
+        if (sync) outputStream.getFD().sync();
+        return count;
+      } catch (OperationCanceledException e) {
+        Utils.deleteOutput(context, toUri, toFile);
+        throw e;
+      }
+    }
+  }
+
+  private static FileOutputStream openOutput(ReactApplicationContext context, @Nullable Uri uri, @Nullable File file) throws IOException {
+    if (uri != null) return new ParcelFileDescriptor.AutoCloseOutputStream(Utils.openFileDescriptor(context, uri.toString(), "wt"));
+    if (file == null) throw new IOException("no copy target");
+    File pFile = file.getParentFile();
+    if (pFile != null && !pFile.exists()) pFile.mkdirs();
+    return new FileOutputStream(file);
+  }
+
+  /**
+   * @param size size of the source, -1 if unknown
+   * @return bytes copied
+   */
+  public static long copy(FileChannel in, long size, FileChannel out, @Nullable TaskHandle task) throws IOException {
+    if (task != null) task.setTotalBytes(size);
+    long position = 0;
+    if (size >= 0) {
+      while (position < size) {
+        if (task != null) task.throwIfCanceled();
+        long count = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+        // the source was truncated while copying
+        if (count <= 0) break;
+        position += count;
+        if (task != null) task.onProgress(count);
+      }
+      return position;
+    }
+
+    ByteBuffer buffer = buffers.get();
+    while (true) {
+      if (task != null) task.throwIfCanceled();
+      buffer.clear();
+      int count = in.read(buffer);
+      if (count < 0) break;
+      buffer.flip();
+      while (buffer.hasRemaining()) out.write(buffer);
+      position += count;
+      if (task != null) task.onProgress(count);
+    }
+    return position;
+  }
+}
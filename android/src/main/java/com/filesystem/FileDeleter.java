@@ -0,0 +1,141 @@
+package com.filesystem;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Recursive delete. A document directory is deleted with its subtree in one provider call when the provider
+ * supports it, plain directories are deleted in parallel on a fork/join pool. Entries that can not be deleted
+ * are left in place and reported together once the rest of the tree is deleted.
+ * A canceled task stops before the next directory, what was deleted so far stays deleted.
+ */
+public class FileDeleter {
+  // entries of one directory deleted by one task, larger directories are split
+  static final int BATCH_SIZE = 256;
+  // failed paths named in the error message, the count covers the rest
+  static final int MAX_REPORTED_FAILURES = 10;
+
+  private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+  @Nullable private final TaskHandle task;
+
+  private FileDeleter(@Nullable TaskHandle task) {
+    this.task = task;
+  }
+
+  public static void delete(ReactApplicationContext reactContext, ForkJoinPool pool, String path, @Nullable TaskHandle task) throws IOException {
+    FileDeleter deleter = new FileDeleter(task);
+    FsFile file = new FsFile(reactContext, path);
+    if (file.isDocFile()) {
+      deleter.deleteDocument(file);
+    } else {
+      File plainFile = Utils.parsePathToFile(path);
+      // a file, a symbolic link or an empty directory, the common case needs no listing
+      if (plainFile.delete()) return;
+      if (!plainFile.isDirectory()) {
+        if (!isGone(plainFile)) throw new IOException("delete failed: " + path);
+        return;
+      }
+      try {
+        pool.invoke(deleter.new DirectoryAction(plainFile));
+      } catch (RuntimeException e) {
+        // the pool may rethrow a copy of a worker exception without its message
+        if (task != null) task.throwIfCanceled();
+        throw e;
+      }
+    }
+    deleter.throwIfFailed();
+  }
+
+  private void deleteDocument(FsFile file) {
+    if (task != null) task.throwIfCanceled();
+    if (file.isDirectory()) {
+      if (file.providerDeleteTree()) return;
+      try {
+        for (FsFile child : file.ls()) deleteDocument(child);
+      } catch (IOException e) {
+        // not listable, the delete below fails and reports it
+      }
+    }
+    if (!file.unlink()) failures.add(file.getPath());
+  }
+
+  // a file that is gone was deleted by someone else, only an entry that is still there failed
+  private static boolean isGone(File file) {
+    try {
+      Os.lstat(file.getPath());
+      return false;
+    } catch (ErrnoException e) {
+      return e.errno == OsConstants.ENOENT;
+    }
+  }
+
+  private void throwIfFailed() throws IOException {
+    if (failures.isEmpty()) return;
+    int count = failures.size();
+    StringBuilder message = new StringBuilder("delete failed for ").append(count).append(count == 1 ? " entry: " : " entries: ");
+    Iterator<String> iterator = failures.iterator();
+    for (int i = 0; i < MAX_REPORTED_FAILURES && iterator.hasNext(); i++) {
+      if (i > 0) message.append(", ");
+      message.append(iterator.next());
+    }
+    if (count > MAX_REPORTED_FAILURES) message.append(", ...");
+    throw new IOException(message.toString());
+  }
+
+  private class DirectoryAction extends RecursiveAction {
+    private final File dir;
+    DirectoryAction(File dir) {
+      this.dir = dir;
+    }
+    @Override
+    protected void compute() {
+      if (task != null) task.throwIfCanceled();
+      String[] names = dir.list();
+      if (names != null) new BatchAction(dir, names, 0, names.length).invoke();
+      if (!dir.delete() && !isGone(dir)) failures.add(dir.getPath());
+    }
+  }
+
+  private class BatchAction extends RecursiveAction {
+    private final File dir;
+    private final String[] names;
+    private final int from;
+    private final int to;
+    BatchAction(File dir, String[] names, int from, int to) {
+      this.dir = dir;
+      this.names = names;
+      this.from = from;
+      this.to = to;
+    }
+    @Override
+    protected void compute() {
+      if (to - from > BATCH_SIZE) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new BatchAction(dir, names, from, middle), new BatchAction(dir, names, middle, to));
+        return;
+      }
+      ArrayList<DirectoryAction> subdirectories = new ArrayList<>();
+      for (int i = from; i < to; i++) {
+        File file = new File(dir, names[i]);
+        // delete first, only a directory with children fails and is listed
+        if (file.delete()) continue;
+        if (file.isDirectory()) subdirectories.add(new DirectoryAction(file));
+        else if (!isGone(file)) failures.add(file.getPath());
+      }
+      invokeAll(subdirectories);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package com.filesystem;
+
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Native table of open files, JS keeps the handle id and reads or writes sequentially without reopening the file.
+ * Handles idle for longer than the idle timeout are closed, and the number of open handles is capped.
+ */
+public class FileHandles {
+  public static final int DEFAULT_MAX_OPEN = 64;
+  public static final long DEFAULT_IDLE_TIMEOUT = 60_000;
+  // largest read from a pipe, its size is unknown so the buffer is not sized by the file
+  static final int MAX_PIPE_READ = 1 << 20;
+
+  private final ReactApplicationContext context;
+  private final AsyncTask.TaskRunner taskRunner;
+  private final int maxOpen;
+  private final long idleTimeout;
+  private final HashMap<Integer, Handle> handles = new HashMap<>();
+  private int nextId = 1;
+  @Nullable private ScheduledFuture<?> sweepFuture = null;
+
+  static class Handle implements Closeable {
+    final int id;
+    final String path;
+    final boolean readable;
+    final ParcelFileDescriptor pfd;
+    final Closeable stream;
+    final FileChannel channel;
+    // a pipe from a provider can not seek or report its size
+    final boolean seekable;
+    long lastAccess;
+    int busy = 0;
+    Handle(int id, String path, boolean readable, ParcelFileDescriptor pfd) {
+      this.id = id;
+      this.path = path;
+      this.readable = readable;
+      this.pfd = pfd;
+      if (readable) {
+        FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+        this.stream = inputStream;
+        this.channel = inputStream.getChannel();
+      } else {
+        FileOutputStream outputStream = new ParcelFileDescriptor.AutoCloseOutputStream(pfd);
+        this.stream = outputStream;
+        this.channel = outputStream.getChannel();
+      }
+      this.seekable = pfd.getStatSize() >= 0;
+      this.lastAccess = System.currentTimeMillis();
+    }
+    @Override
+    public void close() throws IOException {
+      stream.close();
+    }
+  }
+
+  FileHandles(ReactApplicationContext context, AsyncTask.TaskRunner taskRunner, int maxOpen, long idleTimeout) {
+    this.context = context;
+    this.taskRunner = taskRunner;
+    this.maxOpen = maxOpen;
+    this.idleTimeout = idleTimeout;
+  }
+  FileHandles(ReactApplicationContext context, AsyncTask.TaskRunner taskRunner) {
+    this(context, taskRunner, DEFAULT_MAX_OPEN, DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /**
+   * @param mode "r" read, "w" truncate and write, "a" append
+   */
+  public int open(String path, String mode) throws IOException {
+    synchronized (this) {
+      if (handles.size() >= maxOpen) throw new IOException("too many open file handles: " + maxOpen);
+    }
+    ParcelFileDescriptor pfd;
+    switch (mode) {
+      case "r":
+        pfd = Utils.openFileDescriptor(context, path, "r");
+        break;
+      case "w":
+      case "a":
+        pfd = Utils.openWriteFileDescriptor(context, path, mode.equals("a"));
+        break;
+      default:
+        throw new IOException("invalid open mode: " + mode);
+    }
+    synchronized (this) {
+      if (handles.size() >= maxOpen) {
+        pfd.close();
+        throw new IOException("too many open file handles: " + maxOpen);
+      }
+      Handle handle = new Handle(nextId++, path, mode.equals("r"), pfd);
+      handles.put(handle.id, handle);
+      if (sweepFuture == null) {
+        long period = Math.max(1000, idleTimeout / 2);
+        sweepFuture = taskRunner.schedule(this::closeIdle, period, period);
+      }
+      return handle.id;
+    }
+  }
+
+  private synchronized Handle acquire(int id) throws IOException {
+    Handle handle = handles.get(id);
+    if (handle == null) throw new IOException("file handle is closed: " + id);
+    handle.busy++;
+    handle.lastAccess = System.currentTimeMillis();
+    return handle;
+  }
+
+  private synchronized void release(Handle handle) {
+    handle.busy--;
+    handle.lastAccess = System.currentTimeMillis();
+  }
+
+  /**
+   * Read up to `length` bytes from the current position, resolves null at the end of the file.
+   * utf8 reads stop before a split multi-byte character, the next read starts with it.
+   * A utf8 read shorter than the character at the position is extended to the whole character.
+   */
+  @Nullable
+  public String read(int id, int length, String encoding) throws IOException {
+    if (length < 0) throw new IOException("invalid read length: " + length);
+    Handle handle = acquire(id);
+    try {
+      if (!handle.readable) throw new IOException("file handle is not readable: " + id);
+      // the buffer is never larger than what is left of the file, a pipe is read in bounded chunks
+      int count = handle.seekable
+        ? (int) Math.max(0, Math.min(length, handle.channel.size() - handle.channel.position()))
+        : Math.min(length, MAX_PIPE_READ);
+      boolean utf8 = !encoding.equals("base64") && handle.seekable;
+      ByteBuffer buffer = allocate(utf8 ? count + 3 : count);
+      buffer.limit(count);
+      while (buffer.hasRemaining()) {
+        if (handle.channel.read(buffer) < 0) break;
+      }
+      int bytesRead = buffer.position();
+      if (bytesRead == 0 && length > 0) return null;
+      if (utf8) {
+        int complete = Utils.getUtf8CompleteLength(buffer.array(), bytesRead);
+        if (complete == 0 && bytesRead > 0) {
+          // the whole read is the start of one character, read the rest of it
+          int lead = buffer.get(0) & 0xFF;
+          buffer.limit(lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2);
+          while (buffer.hasRemaining()) {
+            if (handle.channel.read(buffer) < 0) break;
+          }
+          // a file that ends inside the character decodes what is there
+          bytesRead = complete = buffer.position();
+        }
+        if (complete < bytesRead) {
+          handle.channel.position(handle.channel.position() - (bytesRead - complete));
+          bytesRead = complete;
+        }
+      }
+      return Utils.encodeData(buffer.array(), 0, bytesRead, encoding);
+    } finally {
+      release(handle);
+    }
+  }
+  private static ByteBuffer allocate(int size) throws IOException {
+    try {
+      return ByteBuffer.allocate(size);
+    } catch (OutOfMemoryError e) {
+      throw new IOException("not enough memory to read " + size + " bytes");
+    }
+  }
+
+  /**
+   * Write at the current position, resolves the number of bytes written.
+   */
+  public int write(int id, String data, String encoding) throws IOException {
+    Handle handle = acquire(id);
+    try {
+      if (handle.readable) throw new IOException("file handle is not writable: " + id);
+      byte[] dataByte = encoding.equals("base64") ? Utils.decodeBase64(data) : data.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer buffer = ByteBuffer.wrap(dataByte);
+      while (buffer.hasRemaining()) handle.channel.write(buffer);
+      return dataByte.length;
+    } finally {
+      release(handle);
+    }
+  }
+
+  /**
+   * @param whence "set" from the start, "cur" from the current position, "end" from the end of the file
+   * @return the new position
+   */
+  public long seek(int id, long offset, String whence) throws IOException {
+    Handle handle = acquire(id);
+    try {
+      if (!handle.seekable) throw new IOException("file handle is not seekable: " + id);
+      long position;
+      switch (whence) {
+        case "cur":
+          position = handle.channel.position() + offset;
+          break;
+        case "end":
+          position = handle.channel.size() + offset;
+          break;
+        default:
+          position = offset;
+      }
+      if (position < 0) throw new IOException("invalid seek position: " + position);
+      handle.channel.position(position);
+      return position;
+    } finally {
+      release(handle);
+    }
+  }
+
+  public void close(int id) throws IOException {
+    Handle handle;
+    synchronized (this) {
+      handle = handles.remove(id);
+    }
+    if (handle != null) handle.close();
+  }
+
+  void closeIdle() {
+    ArrayList<Handle> idle = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      for (Map.Entry<Integer, Handle> entry : handles.entrySet()) {
+        Handle handle = entry.getValue();
+        if (handle.busy == 0 && now - handle.lastAccess > idleTimeout) idle.add(handle);
+      }
+      for (Handle handle : idle) handles.remove(handle.id);
+      if (handles.isEmpty() && sweepFuture != null) {
+        sweepFuture.cancel(false);
+        sweepFuture = null;
+      }
+    }
+    for (Handle handle : idle) {
+      Log.w("FileSystem", "close idle file handle: " + handle.path);
+      closeQuietly(handle);
+    }
+  }
+
+  public void closeAll() {
+    ArrayList<Handle> all;
+    synchronized (this) {
+      all = new ArrayList<>(handles.values());
+      handles.clear();
+      if (sweepFuture != null) {
+        sweepFuture.cancel(false);
+        sweepFuture = null;
+      }
+    }
+    for (Handle handle : all) closeQuietly(handle);
+  }
+
+  private static void closeQuietly(Handle handle) {
+    try {
+      handle.close();
+    } catch (IOException e) {
+      Log.w("FileSystem", "close file handle failed: " + e.getMessage());
+    }
+  }
+}
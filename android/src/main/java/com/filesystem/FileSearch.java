@@ -0,0 +1,220 @@
+package com.filesystem;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming search in a file, memory stays bounded by the chunk size and the pattern length.
+ * Literal patterns are matched on the raw bytes with Boyer-Moore-Horspool,
+ * regex patterns are matched per line, a line longer than {@link #MAX_LINE_SIZE} is searched in segments.
+ */
+public class FileSearch {
+  static final int CHUNK_SIZE = 64 * 1024;
+  // bytes of the line kept on each side of a match in its snippet
+  static final int SNIPPET_CONTEXT = 80;
+  static final int MAX_LINE_SIZE = 1024 * 1024;
+
+  static class Match {
+    final long offset;
+    final int length;
+    final long line;
+    final String snippet;
+    Match(long offset, int length, long line, String snippet) {
+      this.offset = offset;
+      this.length = length;
+      this.line = line;
+      this.snippet = snippet;
+    }
+    WritableMap toMap() {
+      WritableMap match = Arguments.createMap();
+      match.putDouble("offset", offset);
+      match.putInt("length", length);
+      match.putDouble("line", line);
+      match.putString("snippet", snippet);
+      return match;
+    }
+  }
+
+  /**
+   * @return matches of {offset, length, line, snippet}, offsets and lengths are in bytes and lines count from 0
+   */
+  public static WritableArray search(ReactApplicationContext context, String path, String pattern, boolean regex,
+                                     boolean caseInsensitive, int maxMatches, @Nullable TaskHandle task) throws IOException {
+    WritableArray matches = Arguments.createArray();
+    try (InputStream inputStream = Utils.trackProgress(context, path, Utils.createInputStream(context, path), task)) {
+      for (Match match : search(inputStream, pattern, regex, caseInsensitive, maxMatches, task)) matches.pushMap(match.toMap());
+    }
+    return matches;
+  }
+
+  static ArrayList<Match> search(InputStream inputStream, String pattern, boolean regex, boolean caseInsensitive,
+                                 int maxMatches, @Nullable TaskHandle task) throws IOException {
+    ArrayList<Match> matches = new ArrayList<>();
+    if (pattern.isEmpty() || maxMatches <= 0) return matches;
+    byte[] literal = pattern.getBytes(StandardCharsets.UTF_8);
+    // byte matching only folds the case of ASCII
+    if (!regex && (!caseInsensitive || isAscii(literal))) {
+      searchLiteral(inputStream, literal, caseInsensitive, maxMatches, task, matches);
+    } else {
+      int flags = caseInsensitive ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+      searchRegex(inputStream, Pattern.compile(regex ? pattern : Pattern.quote(pattern), flags), maxMatches, task, matches);
+    }
+    return matches;
+  }
+
+  private static boolean isAscii(byte[] data) {
+    for (byte b : data) if (b < 0) return false;
+    return true;
+  }
+
+  private static int lower(byte b) {
+    return b >= 'A' && b <= 'Z' ? b + 32 : b;
+  }
+
+  private static void searchLiteral(InputStream inputStream, byte[] literal, boolean caseInsensitive, int maxMatches,
+                                    @Nullable TaskHandle task, ArrayList<Match> matches) throws IOException {
+    int m = literal.length;
+    byte[] needle = literal.clone();
+    if (caseInsensitive) for (int i = 0; i < m; i++) needle[i] = (byte) lower(needle[i]);
+    int[] shift = new int[256];
+    Arrays.fill(shift, m);
+    for (int i = 0; i < m - 1; i++) shift[needle[i] & 0xff] = m - 1 - i;
+
+    // a match is only taken once the bytes after it for the snippet are read, or at the end of the file
+    byte[] buffer = new byte[CHUNK_SIZE + m + SNIPPET_CONTEXT * 2];
+    long base = 0;
+    int end = 0;
+    int pos = 0;
+    long line = 0;
+    int counted = 0;
+    int found = 0;
+    boolean eof = false;
+    while (true) {
+      while (!eof && end < buffer.length) {
+        int length = inputStream.read(buffer, end, buffer.length - end);
+        if (length < 0) eof = true;
+        else end += length;
+      }
+      if (task != null) task.throwIfCanceled();
+      int limit = eof ? end - m : end - m - SNIPPET_CONTEXT;
+      while (pos <= limit) {
+        int j = m - 1;
+        if (caseInsensitive) {
+          while (j >= 0 && lower(buffer[pos + j]) == needle[j]) j--;
+        } else {
+          while (j >= 0 && buffer[pos + j] == needle[j]) j--;
+        }
+        if (j >= 0) {
+          int last = buffer[pos + m - 1];
+          pos += shift[(caseInsensitive ? lower((byte) last) : last) & 0xff];
+          continue;
+        }
+        for (; counted < pos; counted++) if (buffer[counted] == '\n') line++;
+        matches.add(buildLiteralMatch(buffer, base, pos, m, line, end));
+        if (++found >= maxMatches) return;
+        pos += m;
+      }
+      if (eof) return;
+      // keep the context before the next candidate
+      int keepFrom = Math.max(0, Math.min(pos, end) - SNIPPET_CONTEXT);
+      for (; counted < keepFrom; counted++) if (buffer[counted] == '\n') line++;
+      System.arraycopy(buffer, keepFrom, buffer, 0, end - keepFrom);
+      base += keepFrom;
+      end -= keepFrom;
+      pos -= keepFrom;
+      counted -= keepFrom;
+    }
+  }
+
+  private static Match buildLiteralMatch(byte[] buffer, long base, int pos, int m, long line, int end) {
+    int start = pos;
+    int minStart = Math.max(0, pos - SNIPPET_CONTEXT);
+    while (start > minStart && buffer[start - 1] != '\n') start--;
+    int stop = pos + m;
+    int maxStop = Math.min(end, pos + m + SNIPPET_CONTEXT);
+    while (stop < maxStop && buffer[stop] != '\n') stop++;
+    if (stop > pos + m && buffer[stop - 1] == '\r') stop--;
+    // do not cut a multi-byte character at the edges
+    while (start < pos && (buffer[start] & 0xC0) == 0x80) start++;
+    while (stop > pos + m && stop < end && (buffer[stop] & 0xC0) == 0x80) stop--;
+
+    return new Match(base + pos, m, line, new String(buffer, start, stop - start, StandardCharsets.UTF_8));
+  }
+
+  private static void searchRegex(InputStream inputStream, Pattern pattern, int maxMatches,
+                                  @Nullable TaskHandle task, ArrayList<Match> matches) throws IOException {
+    byte[] data = new byte[CHUNK_SIZE];
+    LineReader.LineBuffer lineBuffer = new LineReader.LineBuffer();
+    long lineOffset = 0;
+    long line = 0;
+    int[] found = {0};
+    int length;
+    while ((length = inputStream.read(data)) != -1) {
+      if (task != null) task.throwIfCanceled();
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        if (data[i] != '\n') continue;
+        lineBuffer.append(data, start, i - start);
+        int lineLength = lineBuffer.length;
+        if (lineLength > 0 && lineBuffer.data[lineLength - 1] == '\r') lineLength--;
+        if (matchLine(pattern, lineBuffer.data, lineLength, lineOffset, line, maxMatches, found, matches)) return;
+        lineOffset += lineBuffer.length + 1;
+        lineBuffer.length = 0;
+        line++;
+        start = i + 1;
+      }
+      lineBuffer.append(data, start, length - start);
+      if (lineBuffer.length >= MAX_LINE_SIZE) {
+        int complete = Utils.getUtf8CompleteLength(lineBuffer.data, lineBuffer.length);
+        if (matchLine(pattern, lineBuffer.data, complete, lineOffset, line, maxMatches, found, matches)) return;
+        lineOffset += complete;
+        System.arraycopy(lineBuffer.data, complete, lineBuffer.data, 0, lineBuffer.length - complete);
+        lineBuffer.length -= complete;
+      }
+    }
+    if (lineBuffer.length > 0) matchLine(pattern, lineBuffer.data, lineBuffer.length, lineOffset, line, maxMatches, found, matches);
+  }
+
+  // true once maxMatches are found
+  private static boolean matchLine(Pattern pattern, byte[] data, int length, long lineOffset, long line,
+                                   int maxMatches, int[] found, ArrayList<Match> matches) {
+    String text = new String(data, 0, length, StandardCharsets.UTF_8);
+    Matcher matcher = pattern.matcher(text);
+    // byte offset of the char at charIndex, advanced with the matches
+    int charIndex = 0;
+    long byteIndex = 0;
+    while (matcher.find()) {
+      byteIndex += utf8Length(text, charIndex, matcher.start());
+      charIndex = matcher.start();
+      matches.add(new Match(lineOffset + byteIndex, (int) utf8Length(text, matcher.start(), matcher.end()), line,
+        text.substring(Math.max(0, matcher.start() - SNIPPET_CONTEXT), Math.min(text.length(), matcher.end() + SNIPPET_CONTEXT))));
+      if (++found[0] >= maxMatches) return true;
+    }
+    return false;
+  }
+
+  private static long utf8Length(String text, int from, int to) {
+    long length = 0;
+    for (int i = from; i < to; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) length += 1;
+      else if (c < 0x800) length += 2;
+      else if (Character.isHighSurrogate(c)) length += 2;
+      else if (Character.isLowSurrogate(c)) length += 2;
+      else length += 3;
+    }
+    return length;
+  }
+}
@@ -1,6 +1,10 @@
 package com.filesystem;
 
 import android.net.Uri;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
@@ -9,19 +13,27 @@ import com.facebook.react.bridge.WritableMap;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public class FileSystem {
+  private static final int HASH_SLICE_SIZE = 1024 * 1024;
+  private static final SyncGroup syncGroup = new SyncGroup();
+
   public static WritableArray ls(ReactApplicationContext reactContext, String path) throws IOException {
     FsFile dir = new FsFile(reactContext, path);
     ArrayList<FsFile> files = dir.ls();
@@ -29,29 +41,182 @@ public class FileSystem {
     for (FsFile file : files) array.pushMap(file.buildFileInfo());
     return array;
   }
+  /**
+   * @param limit max number of entries, all entries after offset when < 0
+   */
+  public static WritableArray ls(ReactApplicationContext reactContext, String path, int offset, int limit, ListingCache listings) throws IOException {
+    if (offset <= 0 && limit < 0) return ls(reactContext, path);
+    FsFile dir = new FsFile(reactContext, path);
+    WritableArray array = Arguments.createArray();
+    for (FsFile file : listings.page(dir, path, offset, limit)) array.pushMap(file.buildFileInfo());
+    return array;
+  }
+  /**
+   * Send the entries in chunks of `chunkSize` as LS_CHUNK events, then an LS_END event.
+   * @return number of entries
+   */
+  public static int lsStream(ReactApplicationContext reactContext, String path, int chunkSize, FileSystemEvent event, TaskHandle task) throws IOException {
+    EntryStream stream = new EntryStream(event, FileSystemEvent.LS_CHUNK, task, chunkSize);
+    String error = null;
+    try {
+      // entries are sent while the directory is read, the first chunk does not wait for the whole listing
+      new FsFile(reactContext, path).ls(file -> {
+        task.throwIfCanceled();
+        stream.push(file.buildFileInfo());
+      });
+      stream.flush();
+      return stream.getTotal();
+    } catch (IOException | RuntimeException e) {
+      error = e.getMessage() == null ? e.toString() : e.getMessage();
+      throw e;
+    } finally {
+      stream.end(FileSystemEvent.LS_END, error);
+    }
+  }
 
   public static String readFile(ReactApplicationContext reactContext, String path, String encoding) throws IOException {
-    try (InputStream inputStream = Utils.createInputStream(reactContext, path);
-         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()){
-      byte[] buffer = new byte[1024];
-      int bytesRead;
-      while ((bytesRead = inputStream.read(buffer)) != -1) {
-        byteArrayOutputStream.write(buffer, 0, bytesRead);
+    // the size of a plain file is known up front, the buffer is sized once and the data is never copied
+    long size = Utils.isContentUri(path) ? -1 : Utils.parsePathToFile(path).length();
+    try (InputStream inputStream = Utils.createInputStream(reactContext, path)) {
+      if (encoding.equals("base64")) return Utils.readBase64(inputStream, size);
+      ByteBuffer data = Utils.readFully(inputStream, size);
+      return new String(data.array(), 0, data.limit(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Read `length` bytes from `offset`, only the requested bytes are read.
+   * @param length bytes to read, read to the end of the file when < 0
+   */
+  public static String readFile(ReactApplicationContext reactContext, String path, String encoding, long offset, long length) throws IOException {
+    if (offset <= 0 && length < 0) return readFile(reactContext, path, encoding);
+    if (offset < 0) offset = 0;
+    ParcelFileDescriptor pfd = Utils.openFileDescriptor(reactContext, path, "r");
+    try (FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+      long size = pfd.getStatSize();
+      if (size < 0) return readStreamRange(inputStream, encoding, offset, length);
+      long start = Math.min(offset, size);
+      long count = length < 0 ? size - start : Math.min(length, size - start);
+      if (count > Integer.MAX_VALUE - 8) throw new IOException("read range too large: " + count);
+      ByteBuffer buffer = ByteBuffer.allocate((int) count);
+      FileChannel channel = inputStream.getChannel();
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, start + buffer.position()) < 0) break;
       }
-      return encoding.equals("base64")
-        ? Utils.encodeBase64(byteArrayOutputStream.toByteArray())
-        : new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
+      return Utils.encodeData(buffer.array(), 0, buffer.position(), encoding);
+    }
+  }
+  private static String readStreamRange(InputStream inputStream, String encoding, long offset, long length) throws IOException {
+    ByteArrayOutputStream byteArrayOutputStream = readStreamRange(inputStream, offset, length);
+    return Utils.encodeData(byteArrayOutputStream.toByteArray(), 0, byteArrayOutputStream.size(), encoding);
+  }
+  // providers that hand out pipes can not seek, skip to the range instead
+  private static ByteArrayOutputStream readStreamRange(InputStream inputStream, long offset, long length) throws IOException {
+    byte[] buffer = new byte[8192];
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    while (offset > 0) {
+      int bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, offset));
+      if (bytesRead == -1) return byteArrayOutputStream;
+      offset -= bytesRead;
+    }
+    long remaining = length < 0 ? Long.MAX_VALUE : length;
+    int bytesRead;
+    while (remaining > 0 && (bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+      byteArrayOutputStream.write(buffer, 0, bytesRead);
+      remaining -= bytesRead;
+    }
+    return byteArrayOutputStream;
+  }
+
+  /**
+   * Read `length` bytes from `offset` into a direct buffer, native code copies it into an ArrayBuffer.
+   * @param length bytes to read, read to the end of the file when < 0
+   * @return the buffer flipped for reading
+   */
+  public static ByteBuffer readFileBuffer(ReactApplicationContext reactContext, String path, long offset, long length) throws IOException {
+    if (offset < 0) offset = 0;
+    ParcelFileDescriptor pfd = Utils.openFileDescriptor(reactContext, path, "r");
+    try (FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+      long size = pfd.getStatSize();
+      ByteBuffer buffer;
+      if (size < 0) {
+        ByteArrayOutputStream byteArrayOutputStream = readStreamRange(inputStream, offset, length);
+        buffer = allocateDirect(byteArrayOutputStream.size());
+        buffer.put(byteArrayOutputStream.toByteArray());
+      } else {
+        long start = Math.min(offset, size);
+        buffer = allocateDirect(length < 0 ? size - start : Math.min(length, size - start));
+        FileChannel channel = inputStream.getChannel();
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, start + buffer.position()) < 0) break;
+        }
+      }
+      buffer.flip();
+      return buffer;
+    }
+  }
+  private static ByteBuffer allocateDirect(long size) throws IOException {
+    if (size > Integer.MAX_VALUE - 8) throw new IOException("read range too large: " + size);
+    try {
+      return ByteBuffer.allocateDirect((int) size);
+    } catch (OutOfMemoryError e) {
+      throw new IOException("not enough memory to read " + size + " bytes");
+    }
+  }
+
+  /**
+   * Write the remaining bytes of `data`, the target is created the same way as by writeFile.
+   * @return the bytes written
+   */
+  public static int writeFileBuffer(ReactApplicationContext reactContext, String path, ByteBuffer data, boolean append) throws IOException {
+    ParcelFileDescriptor pfd = Utils.openWriteFileDescriptor(reactContext, path, append);
+    try (FileOutputStream outputStream = new ParcelFileDescriptor.AutoCloseOutputStream(pfd)) {
+      FileChannel channel = outputStream.getChannel();
+      int count = data.remaining();
+      while (data.hasRemaining()) channel.write(data);
+      return count;
     }
   }
 
   public static void writeFile(ReactApplicationContext reactContext, String path, String data, String encoding) throws IOException {
+    writeFile(reactContext, path, data, encoding, false, false);
+  }
+  /**
+   * @param atomic write a temp sibling and rename it over the file, readers never see a partial file. Plain paths only
+   * @param durable flush the data to storage before returning, atomic writes into one directory share its sync.
+   * Fails before writing when a provider does not hand out a file descriptor to sync
+   */
+  public static void writeFile(ReactApplicationContext reactContext, String path, String data, String encoding, boolean atomic, boolean durable) throws IOException {
+    byte[] dataByte = encoding.equals("base64") ? Utils.decodeBase64(data) : data.getBytes();
+    if (atomic && !Utils.isContentUri(path)) {
+      writeFileAtomic(Utils.parsePathToFile(path), dataByte, durable);
+      return;
+    }
     Uri uri = Utils.createDocumentFileUri(reactContext, path);
     try (OutputStream outputStream = uri == null
         ? Utils.createOutputStream(Utils.parsePathToFile(path))
         : Utils.createOutputStream(reactContext, uri)) {
-      byte[] dataByte = encoding.equals("base64") ? Utils.decodeBase64(data) : data.getBytes();
+      if (durable && !(outputStream instanceof FileOutputStream)) throw new IOException("durable write not supported: " + path);
       outputStream.write(dataByte);
+      if (durable) syncGroup.syncFile(((FileOutputStream) outputStream).getFD());
+    }
+  }
+  private static void writeFileAtomic(File file, byte[] data, boolean durable) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.exists()) dir.mkdirs();
+    File tempFile = File.createTempFile("." + file.getName() + ".", ".tmp", dir);
+    try {
+      try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+        outputStream.write(data);
+        if (durable) syncGroup.syncFile(outputStream.getFD());
+      }
+      if (!tempFile.renameTo(file)) throw new IOException("replace file failed: " + file.getPath());
+    } catch (IOException e) {
+      tempFile.delete();
+      throw e;
     }
+    // the rename itself is durable once the directory is synced
+    if (durable && dir != null) syncGroup.syncDir(dir);
   }
 
   public static void appendFile(ReactApplicationContext reactContext, String path, String data, String encoding) throws IOException {
@@ -82,32 +247,21 @@ public class FileSystem {
     return file.exists();
   }
 
-  private static void deleteRecursive(FsFile fileOrDirectory) throws IOException {
-    if (fileOrDirectory.isDirectory()) {
-      for (FsFile child : Objects.requireNonNull(fileOrDirectory.ls())) {
-        deleteRecursive(child);
-      }
-    }
-    fileOrDirectory.unlink();
-  }
-  public static void unlink(ReactApplicationContext reactContext, String path) throws IOException {
-    deleteRecursive(new FsFile(reactContext, path));
+  public static void unlink(ReactApplicationContext reactContext, ForkJoinPool pool, String path, @Nullable TaskHandle task) throws IOException {
+    FileDeleter.delete(reactContext, pool, path, task);
   }
 
   public static void cp(ReactApplicationContext reactContext, String fromPath, String toPath) throws IOException {
-    try (InputStream inputStream = Utils.createInputStream(reactContext, fromPath);
-         OutputStream outputStream = Utils.createOutputStream(reactContext, toPath)) {
-      byte[] buffer = new byte[1024];
-      int length;
-      while ((length = inputStream.read(buffer)) > 0) {
-        outputStream.write(buffer, 0, length);
-      }
-    }
+    cp(reactContext, fromPath, toPath, null);
+  }
+  public static void cp(ReactApplicationContext reactContext, String fromPath, String toPath, @Nullable TaskHandle task) throws IOException {
+    if (new FsFile(reactContext, fromPath).providerCopy(toPath)) return;
+    FileCopier.copy(reactContext, fromPath, toPath, task);
   }
 
-  public static void mv(ReactApplicationContext reactContext, String fromPath, String toPath) throws IOException {
+  public static void mv(ReactApplicationContext reactContext, String fromPath, String toPath, @Nullable TaskHandle task) throws IOException {
     FsFile file = new FsFile(reactContext, fromPath);
-    file.mv(toPath);
+    file.mv(toPath, task);
   }
 
   public static boolean rename(ReactApplicationContext reactContext, String fromPath, String name) {
@@ -115,26 +269,34 @@ public class FileSystem {
     return file.rename(name);
   }
 
-  public static void gzipFile(ReactApplicationContext reactContext, String fromPath, String toPath) throws IOException {
-    try (InputStream inputStream = Utils.createInputStream(reactContext, fromPath);
-         OutputStream outputStream = Utils.createOutputStream(reactContext, toPath);
-          GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
-      byte[] buffer = new byte[4096];
-      int length;
-      while ((length = inputStream.read(buffer)) > 0) {
-        gzipOutputStream.write(buffer, 0, length);
+  public static void gzipFile(ReactApplicationContext reactContext, String fromPath, String toPath, @Nullable TaskHandle task) throws IOException {
+    try (InputStream inputStream = Utils.trackProgress(reactContext, fromPath, Utils.createInputStream(reactContext, fromPath), task)) {
+      Uri uri = Utils.createDocumentFileUri(reactContext, toPath);
+      File file = uri == null ? Utils.parsePathToFile(toPath) : null;
+      try (OutputStream outputStream = uri == null
+          ? Utils.createOutputStream(file)
+          : Utils.createOutputStream(reactContext, uri);
+           GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+        Utils.copyStream(inputStream, gzipOutputStream, new byte[4096], task);
+      } catch (OperationCanceledException e) {
+        Utils.deleteOutput(reactContext, uri, file);
+        throw e;
       }
     }
   }
 
-  public static void unGzipFile(ReactApplicationContext reactContext, String fromPath, String toPath) throws IOException {
-    try (InputStream inputStream = Utils.createInputStream(reactContext, fromPath);
-         OutputStream outputStream = Utils.createOutputStream(reactContext, toPath);
+  public static void unGzipFile(ReactApplicationContext reactContext, String fromPath, String toPath, @Nullable TaskHandle task) throws IOException {
+    try (InputStream inputStream = Utils.trackProgress(reactContext, fromPath, Utils.createInputStream(reactContext, fromPath), task);
          GZIPInputStream gzipInputStream = new GZIPInputStream(inputStream)) {
-      byte[] buffer = new byte[4096];
-      int length;
-      while ((length = gzipInputStream.read(buffer)) > 0) {
-        outputStream.write(buffer, 0, length);
+      Uri uri = Utils.createDocumentFileUri(reactContext, toPath);
+      File file = uri == null ? Utils.parsePathToFile(toPath) : null;
+      try (OutputStream outputStream = uri == null
+          ? Utils.createOutputStream(file)
+          : Utils.createOutputStream(reactContext, uri)) {
+        Utils.copyStream(gzipInputStream, outputStream, new byte[4096], task);
+      } catch (OperationCanceledException e) {
+        Utils.deleteOutput(reactContext, uri, file);
+        throw e;
       }
     }
   }
@@ -166,7 +328,7 @@ public class FileSystem {
     }
   }
 
-  public static String hash(ReactApplicationContext reactContext, String filepath, String algorithm) throws Exception {
+  public static String hash(ReactApplicationContext reactContext, String filepath, String algorithm, @Nullable TaskHandle task) throws Exception {
     // https://github.com/itinance/react-native-fs/blob/64aa755cc1d37f59fa205bf2d52dd71a7d691504/android/src/main/java/com/rnfs/RNFSManager.java#L318
     Map<String, String> algorithms = new HashMap<>();
     algorithms.put("md5", "MD5");
@@ -179,19 +341,42 @@ public class FileSystem {
 
     MessageDigest md = MessageDigest.getInstance(algorithms.get(algorithm));
 
-    try (InputStream inputStream = Utils.createInputStream(reactContext, filepath)) {
-      byte[] buffer = new byte[1024 * 10]; // 10 KB Buffer
+    ParcelFileDescriptor pfd = Utils.openFileDescriptor(reactContext, filepath, "r");
+    try (FileInputStream fileInputStream = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+      long size = pfd.getStatSize();
+      if (size >= 0) {
+        // positional reads into one direct buffer, digested without a copy to the heap
+        if (task != null) task.setTotalBytes(size);
+        FileChannel channel = fileInputStream.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_SLICE_SIZE);
+        long position = 0;
+        int read;
+        while ((read = channel.read(buffer, position)) != -1) {
+          if (task != null) task.throwIfCanceled();
+          buffer.flip();
+          md.update(buffer);
+          buffer.clear();
+          position += read;
+          if (task != null) task.onProgress(read);
+        }
+      } else {
+        // a pipe from a provider
+        try (InputStream inputStream = Utils.trackProgress(fileInputStream, -1, task)) {
+          byte[] buffer = new byte[1024 * 10]; // 10 KB Buffer
 
-      int read;
-      while ((read = inputStream.read(buffer)) != -1) {
-        md.update(buffer, 0, read);
+          int read;
+          while ((read = inputStream.read(buffer)) != -1) {
+            if (task != null) task.throwIfCanceled();
+            md.update(buffer, 0, read);
+          }
+        }
       }
+    }
 
-      StringBuilder hexString = new StringBuilder();
-      for (byte digestByte : md.digest())
-        hexString.append(String.format("%02x", digestByte));
+    StringBuilder hexString = new StringBuilder();
+    for (byte digestByte : md.digest())
+      hexString.append(String.format("%02x", digestByte));
 
-      return hexString.toString();
-    }
+    return hexString.toString();
   }
 }
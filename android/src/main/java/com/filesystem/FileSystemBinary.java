@@ -0,0 +1,99 @@
+package com.filesystem;
+
+import android.util.Log;
+
+import androidx.annotation.Keep;
+
+import com.facebook.react.bridge.CatalystInstance;
+import com.facebook.react.bridge.JavaScriptContextHolder;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.turbomodule.core.CallInvokerHolderImpl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSI binding that reads files into and writes files from ArrayBuffers,
+ * installed as `global.__FileSystemBinary`. The I/O runs here on the task runner like the bridge methods,
+ * native code only copies the bytes and settles the promises on the JS thread.
+ */
+public class FileSystemBinary {
+  private static boolean libraryLoaded = false;
+
+  private final ReactApplicationContext context;
+  private final AsyncTask.TaskRunner taskRunner;
+  private final Appender appender;
+  private final DiskUsage.Cache diskUsage;
+
+  FileSystemBinary(ReactApplicationContext context, AsyncTask.TaskRunner taskRunner, Appender appender, DiskUsage.Cache diskUsage) {
+    this.context = context;
+    this.taskRunner = taskRunner;
+    this.appender = appender;
+    this.diskUsage = diskUsage;
+  }
+
+  private static synchronized boolean loadLibrary() {
+    if (libraryLoaded) return true;
+    try {
+      System.loadLibrary("react-native-file-system");
+      libraryLoaded = true;
+    } catch (UnsatisfiedLinkError e) {
+      Log.w("FileSystem", "load native library failed: " + e.getMessage());
+    }
+    return libraryLoaded;
+  }
+
+  /**
+   * Must run on the JS thread.
+   * @return false when JSI is not available, e.g. remote debugging, or the native binding can not be installed
+   */
+  public boolean install() {
+    JavaScriptContextHolder holder = context.getJavaScriptContextHolder();
+    if (holder == null || holder.get() == 0) return false;
+    CatalystInstance catalystInstance = context.getCatalystInstance();
+    if (catalystInstance == null) return false;
+    if (!loadLibrary()) return false;
+    return nativeInstall(holder.get(), (CallInvokerHolderImpl) catalystInstance.getJSCallInvokerHolder());
+  }
+
+  /**
+   * Called from native on the JS thread, the bytes are resolved with nativeResolveBuffer.
+   * @param length bytes to read, read to the end of the file when < 0
+   */
+  @Keep
+  void readFile(byte[] path, double offset, double length, String priority, long requestId) {
+    String filePath = new String(path, StandardCharsets.UTF_8);
+    taskRunner.executeAsync(AsyncTask.Lane.fromPriority(priority, AsyncTask.Lane.IO),
+      new Callables.ReadBinary(context, filePath, (long) offset, (long) length, appender), (Object result) -> {
+        if (result instanceof ByteBuffer) {
+          ByteBuffer buffer = (ByteBuffer) result;
+          nativeResolveBuffer(requestId, buffer, buffer.limit());
+        } else reject(requestId, result);
+      });
+  }
+
+  /**
+   * Called from native on the JS thread, `data` wraps native memory that stays valid until the request is settled.
+   */
+  @Keep
+  void writeFile(byte[] path, ByteBuffer data, boolean append, String priority, long requestId) {
+    String filePath = new String(path, StandardCharsets.UTF_8);
+    taskRunner.executeAsync(AsyncTask.Lane.fromPriority(priority, AsyncTask.Lane.IO),
+      new Callables.WriteBinary(context, filePath, data, append, appender, diskUsage), (Object result) -> {
+        if (result instanceof Integer) nativeResolveNumber(requestId, (Integer) result);
+        else reject(requestId, result);
+      });
+  }
+
+  private static void reject(long requestId, Object error) {
+    String message = error instanceof Throwable && ((Throwable) error).getMessage() != null
+      ? ((Throwable) error).getMessage()
+      : String.valueOf(error);
+    nativeReject(requestId, message.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private native boolean nativeInstall(long jsiRuntimePointer, CallInvokerHolderImpl jsCallInvokerHolder);
+  private static native void nativeResolveBuffer(long requestId, ByteBuffer buffer, int size);
+  private static native void nativeResolveNumber(long requestId, double value);
+  private static native void nativeReject(long requestId, byte[] message);
+}
@@ -9,10 +9,31 @@ import com.facebook.react.modules.core.DeviceEventManagerModule;
 public class FileSystemEvent {
 //  final String SCREEN_STATE = "screen-state";
 //  final String SCREEN_SIZE_CHANGED = "screen-size-changed";
+  static final String PROGRESS = "progress";
+  static final String LS_CHUNK = "lsChunk";
+  static final String LS_END = "lsEnd";
+  static final String WALK_CHUNK = "walkChunk";
+  static final String WALK_END = "walkEnd";
 
   private final ReactApplicationContext reactContext;
+  private volatile int listenerCount = 0;
   FileSystemEvent(ReactApplicationContext reactContext) { this.reactContext = reactContext; }
 
+  public synchronized void addListener() {
+    listenerCount += 1;
+  }
+
+  public synchronized void removeListeners(int count) {
+    listenerCount = Math.max(0, listenerCount - count);
+  }
+
+  /**
+   * Events are only worth building while JS is listening.
+   */
+  public boolean hasListeners() {
+    return listenerCount > 0;
+  }
+
   public void sendEvent(String eventName, @Nullable WritableMap params) {
     reactContext
       .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
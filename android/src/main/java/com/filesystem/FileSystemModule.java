@@ -10,6 +10,7 @@ import android.os.Environment;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.documentfile.provider.DocumentFile;
 
 import com.facebook.react.bridge.ActivityEventListener;
@@ -39,14 +40,24 @@ public class FileSystemModule extends ReactContextBaseJavaModule {
   ActivityEventListener activityEventListener;
   private final int REQUEST_CODE = 27867;
 
-  private int listenerCount = 0;
-
   FileSystemEvent fileSystemEvent;
+  private final AsyncTask.TaskRunner taskRunner;
+  private final FileHandles fileHandles;
+  private final Appender appender;
+  private final ListingCache listings = new ListingCache();
+  private final DiskUsage.Cache diskUsage = new DiskUsage.Cache();
+  private final LineReader.Cache lineIndexes = new LineReader.Cache();
 
   FileSystemModule(ReactApplicationContext reactContext) {
+    this(reactContext, new AsyncTask.TaskRunner());
+  }
+  FileSystemModule(ReactApplicationContext reactContext, AsyncTask.TaskRunner taskRunner) {
     super(reactContext);
     this.reactContext = reactContext;
     fileSystemEvent = new FileSystemEvent(reactContext);
+    this.taskRunner = taskRunner;
+    fileHandles = new FileHandles(reactContext, taskRunner);
+    appender = new Appender(reactContext, taskRunner, diskUsage);
   }
 
   @Override
@@ -55,6 +66,13 @@ public class FileSystemModule extends ReactContextBaseJavaModule {
     return NAME;
   }
 
+  @Override
+  public void invalidate() {
+    taskRunner.shutdown();
+    fileHandles.closeAll();
+    appender.closeAll();
+    super.invalidate();
+  }
 
 
   @Override
@@ -70,99 +88,285 @@ public class FileSystemModule extends ReactContextBaseJavaModule {
 
   @ReactMethod
   public void addListener(String eventName) {
-    if (listenerCount == 0) {
-      // Set up any upstream listeners or background tasks as necessary
+    fileSystemEvent.addListener();
+  }
+
+  @ReactMethod
+  public void removeListeners(Integer count) {
+    fileSystemEvent.removeListeners(count);
+  }
+
+  private static AsyncTask.Lane getLane(@Nullable ReadableMap options, AsyncTask.Lane defaultLane) {
+    if (options == null || !options.hasKey("priority") || options.isNull("priority")) return defaultLane;
+    return AsyncTask.Lane.fromPriority(options.getString("priority"), defaultLane);
+  }
+
+  private TaskHandle createTask(@Nullable ReadableMap options) {
+    String taskId = null;
+    long timeout = 0;
+    if (options != null) {
+      if (options.hasKey("taskId") && !options.isNull("taskId")) taskId = options.getString("taskId");
+      if (options.hasKey("timeout") && !options.isNull("timeout")) timeout = (long) options.getDouble("timeout");
     }
+    TaskHandle task = taskRunner.createTask(taskId, timeout);
+    task.setProgressEvent(fileSystemEvent);
+    return task;
+  }
 
-    listenerCount += 1;
+  @ReactMethod
+  public void ls(String path, @Nullable ReadableMap options, Promise promise) {
+    int offset = 0;
+    int limit = -1;
+    if (options != null) {
+      if (options.hasKey("offset") && !options.isNull("offset")) offset = options.getInt("offset");
+      if (options.hasKey("limit") && !options.isNull("limit")) limit = options.getInt("limit");
+    }
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.METADATA), new Callables.Ls(reactContext, path, offset, limit, listings), promise);
   }
 
   @ReactMethod
-  public void removeListeners(Integer count) {
-    listenerCount -= count;
-    if (listenerCount == 0) {
-      // Remove upstream listeners, stop unnecessary background tasks
+  public void lsStream(String path, @Nullable ReadableMap options, Promise promise) {
+    int chunkSize = 500;
+    if (options != null && options.hasKey("chunkSize") && !options.isNull("chunkSize")) chunkSize = Math.max(1, options.getInt("chunkSize"));
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.METADATA), task, new Callables.LsStream(reactContext, path, chunkSize, fileSystemEvent, task), promise);
+  }
+
+  @ReactMethod
+  public void walk(String path, @Nullable ReadableMap options, Promise promise) {
+    String glob = null;
+    long minSize = 0;
+    int maxDepth = -1;
+    long modifiedAfter = 0;
+    String type = null;
+    int chunkSize = 500;
+    if (options != null) {
+      if (options.hasKey("glob") && !options.isNull("glob")) glob = options.getString("glob");
+      if (options.hasKey("minSize") && !options.isNull("minSize")) minSize = (long) options.getDouble("minSize");
+      if (options.hasKey("maxDepth") && !options.isNull("maxDepth")) maxDepth = options.getInt("maxDepth");
+      if (options.hasKey("modifiedAfter") && !options.isNull("modifiedAfter")) modifiedAfter = (long) options.getDouble("modifiedAfter");
+      if (options.hasKey("type") && !options.isNull("type") && !options.getString("type").equals("all")) type = options.getString("type");
+      if (options.hasKey("chunkSize") && !options.isNull("chunkSize")) chunkSize = Math.max(1, options.getInt("chunkSize"));
     }
+    FileWalker.Filter filter = new FileWalker.Filter(glob, minSize, maxDepth, modifiedAfter, type);
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task,
+      new Callables.Walk(reactContext, taskRunner.getForkJoinPool(), path, filter, chunkSize, fileSystemEvent, task), promise);
+  }
+
+  @ReactMethod
+  public void du(String path, @Nullable ReadableMap options, Promise promise) {
+    boolean refresh = options != null && options.hasKey("refresh") && !options.isNull("refresh") && options.getBoolean("refresh");
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task,
+      new Callables.Du(reactContext, taskRunner.getForkJoinPool(), diskUsage, path, refresh, task), promise);
+  }
+
+  @ReactMethod
+  public void readFile(String path, String encoding, @Nullable ReadableMap options, Promise promise) {
+    long offset = 0;
+    long length = -1;
+    if (options != null) {
+      if (options.hasKey("offset") && !options.isNull("offset")) offset = (long) options.getDouble("offset");
+      if (options.hasKey("length") && !options.isNull("length")) length = (long) options.getDouble("length");
+    }
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), new Callables.ReadFile(reactContext, path, encoding, offset, length, appender), promise);
+  }
+
+  @ReactMethod
+  public void readLines(String path, @Nullable ReadableMap options, Promise promise) {
+    int startLine = 0;
+    int count = 100;
+    if (options != null) {
+      if (options.hasKey("startLine") && !options.isNull("startLine")) startLine = options.getInt("startLine");
+      if (options.hasKey("count") && !options.isNull("count")) count = options.getInt("count");
+    }
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), new Callables.ReadLines(reactContext, path, Math.max(0, startLine), count, appender, lineIndexes), promise);
+  }
+
+  @ReactMethod
+  public void tail(String path, int count, @Nullable ReadableMap options, Promise promise) {
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), new Callables.Tail(reactContext, path, count, appender), promise);
+  }
+
+  @ReactMethod
+  public void writeFile(String path, String data, String encoding, @Nullable ReadableMap options, Promise promise) {
+    boolean atomic = options != null && options.hasKey("atomic") && !options.isNull("atomic") && options.getBoolean("atomic");
+    boolean durable = options != null && options.hasKey("durable") && !options.isNull("durable") && options.getBoolean("durable");
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), new Callables.WriteFile(reactContext, path, data, encoding, appender, atomic, durable, diskUsage), promise);
+  }
+
+  @ReactMethod
+  public void appendFile(String path, String data, String encoding, @Nullable ReadableMap options, Promise promise) {
+    boolean buffered = options != null && options.hasKey("buffered") && !options.isNull("buffered") && options.getBoolean("buffered");
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), new Callables.AppendFile(reactContext, path, data, encoding, appender, buffered, diskUsage), promise);
   }
 
   @ReactMethod
-  public void ls(String path, Promise promise) {
-    AsyncTask.runTask(new Callables.Ls(reactContext, path), promise);
+  public void mkdir(String path, @Nullable ReadableMap options, Promise promise) {
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.METADATA), new Callables.Mkdir(reactContext, path, diskUsage), promise);
   }
 
   @ReactMethod
-  public void readFile(String path, String encoding, Promise promise) {
-    AsyncTask.runTask(new Callables.ReadFile(reactContext, path, encoding), promise);
+  public void stat(String path, @Nullable ReadableMap options, Promise promise) {
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.METADATA), new Callables.Stat(reactContext, path), promise);
   }
 
   @ReactMethod
-  public void writeFile(String path, String data, String encoding, Promise promise) {
-    AsyncTask.runTask(new Callables.WriteFile(reactContext, path, data, encoding), promise);
+  public void exists(String path, @Nullable ReadableMap options, Promise promise) {
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.METADATA), new Callables.Exists(reactContext, path), promise);
   }
 
   @ReactMethod
-  public void appendFile(String path, String data, String encoding, Promise promise) {
-    AsyncTask.runTask(new Callables.AppendFile(reactContext, path, data, encoding), promise);
+  public void unlink(String path, @Nullable ReadableMap options, Promise promise) {
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), task,
+      new Callables.Unlink(reactContext, taskRunner.getForkJoinPool(), path, task, appender, diskUsage), promise);
   }
 
   @ReactMethod
-  public void mkdir(String path, Promise promise) {
-    AsyncTask.runTask(new Callables.Mkdir(reactContext, path), promise);
+  public void cp(String fromPath, String toPath, @Nullable ReadableMap options, Promise promise) {
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task, new Callables.Cp(reactContext, fromPath, toPath, task, appender, diskUsage), promise);
   }
 
   @ReactMethod
-  public void stat(String path, Promise promise) {
-    AsyncTask.runTask(new Callables.Stat(reactContext, path), promise);
+  public void mv(String fromPath, String toPath, @Nullable ReadableMap options, Promise promise) {
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task, new Callables.Mv(reactContext, fromPath, toPath, task, appender, diskUsage), promise);
   }
 
   @ReactMethod
-  public void exists(String path, Promise promise) {
-    AsyncTask.runTask(new Callables.Exists(reactContext, path), promise);
+  public void rename(String fromPath, String name, @Nullable ReadableMap options, Promise promise) {
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.METADATA), new Callables.Rename(reactContext, fromPath, name, appender, diskUsage), promise);
   }
 
   @ReactMethod
-  public void unlink(String path, Promise promise) {
-    AsyncTask.runTask(new Callables.Unlink(reactContext, path), promise);
+  public void gzipFile(String fromPath, String toPath, @Nullable ReadableMap options, Promise promise) {
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task, new Callables.GzipFile(reactContext, fromPath, toPath, task, diskUsage), promise);
   }
 
   @ReactMethod
-  public void cp(String fromPath, String toPath, Promise promise) {
-    AsyncTask.runTask(new Callables.Cp(reactContext, fromPath, toPath), promise);
+  public void unGzipFile(String fromPath, String toPath, @Nullable ReadableMap options, Promise promise) {
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task, new Callables.UnGzipFile(reactContext, fromPath, toPath, task, diskUsage), promise);
+  }
+
+  @ReactMethod
+  public void gzipString(String data, String encoding, @Nullable ReadableMap options, Promise promise) {
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), new Callables.GzipString(data, encoding), promise);
+  }
+
+  @ReactMethod
+  public void unGzipString(String data, String encoding, @Nullable ReadableMap options, Promise promise) {
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.IO), new Callables.UnGzipString(data, encoding), promise);
+  }
+
+  @ReactMethod
+  public void hash(String path, String algorithm, @Nullable ReadableMap options, Promise promise) {
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task, new Callables.Hash(reactContext, path, algorithm, task, appender), promise);
+  }
+
+  @ReactMethod
+  public void search(String path, String pattern, @Nullable ReadableMap options, Promise promise) {
+    boolean regex = false;
+    boolean caseInsensitive = false;
+    int maxMatches = 1000;
+    if (options != null) {
+      if (options.hasKey("regex") && !options.isNull("regex")) regex = options.getBoolean("regex");
+      if (options.hasKey("caseInsensitive") && !options.isNull("caseInsensitive")) caseInsensitive = options.getBoolean("caseInsensitive");
+      if (options.hasKey("maxMatches") && !options.isNull("maxMatches")) maxMatches = options.getInt("maxMatches");
+    }
+    TaskHandle task = createTask(options);
+    taskRunner.runTask(getLane(options, AsyncTask.Lane.BULK), task, new Callables.Search(reactContext, path, pattern, regex, caseInsensitive, maxMatches, task, appender), promise);
+  }
+
+  private static AsyncTask.Lane getOpLane(String op) {
+    switch (op) {
+      case "ls":
+      case "mkdir":
+      case "stat":
+      case "exists":
+      case "rename":
+        return AsyncTask.Lane.METADATA;
+      case "cp":
+      case "mv":
+      case "gzipFile":
+      case "unGzipFile":
+      case "hash":
+        return AsyncTask.Lane.BULK;
+      default:
+        return AsyncTask.Lane.IO;
+    }
+  }
+
+  @ReactMethod
+  @SuppressWarnings("unchecked")
+  public void batch(ReadableArray ops, @Nullable ReadableMap options, Promise promise) {
+    int parallelism = options != null && options.hasKey("parallelism") && !options.isNull("parallelism")
+      ? options.getInt("parallelism")
+      : AsyncTask.DEFAULT_POOL_SIZE;
+    int size = ops.size();
+    AsyncTask.Lane[] lanes = new AsyncTask.Lane[size];
+    Callable<Object>[] callables = new Callable[size];
+    for (int i = 0; i < size; i++) {
+      lanes[i] = AsyncTask.Lane.IO;
+      try {
+        ReadableMap item = ops.getMap(i);
+        String op = item.hasKey("op") && !item.isNull("op") ? item.getString("op") : "";
+        lanes[i] = getLane(item, getOpLane(op));
+        ReadableArray args = item.hasKey("args") && !item.isNull("args") ? item.getArray("args") : Arguments.createArray();
+        callables[i] = Callables.fromOp(reactContext, appender, diskUsage, taskRunner.getForkJoinPool(), op, args);
+      } catch (Exception e) {
+        String message = e.getMessage();
+        callables[i] = () -> {
+          throw new Exception(message);
+        };
+      }
+    }
+    taskRunner.runBatch(lanes, callables, parallelism, promise);
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public boolean installBinary() {
+    return new FileSystemBinary(reactContext, taskRunner, appender, diskUsage).install();
   }
 
   @ReactMethod
-  public void mv(String fromPath, String toPath, Promise promise) {
-    AsyncTask.runTask(new Callables.Mv(reactContext, fromPath, toPath), promise);
+  public void flush(String path, Promise promise) {
+    taskRunner.runTask(AsyncTask.Lane.IO, new Callables.Flush(appender, path), promise);
   }
 
   @ReactMethod
-  public void rename(String fromPath, String name, Promise promise) {
-    AsyncTask.runTask(new Callables.Rename(reactContext, fromPath, name), promise);
+  public void open(String path, String mode, Promise promise) {
+    taskRunner.runTask(AsyncTask.Lane.IO, new Callables.Open(fileHandles, path, mode), promise);
   }
 
   @ReactMethod
-  public void gzipFile(String fromPath, String toPath, Promise promise) {
-    AsyncTask.runTask(new Callables.GzipFile(reactContext, fromPath, toPath), promise);
+  public void read(int handle, int length, String encoding, Promise promise) {
+    taskRunner.runTask(AsyncTask.Lane.IO, new Callables.Read(fileHandles, handle, length, encoding), promise);
   }
 
   @ReactMethod
-  public void unGzipFile(String fromPath, String toPath, Promise promise) {
-    AsyncTask.runTask(new Callables.UnGzipFile(reactContext, fromPath, toPath), promise);
+  public void write(int handle, String data, String encoding, Promise promise) {
+    taskRunner.runTask(AsyncTask.Lane.IO, new Callables.Write(fileHandles, handle, data, encoding), promise);
   }
 
   @ReactMethod
-  public void gzipString(String data, String encoding, Promise promise) {
-    AsyncTask.runTask(new Callables.GzipString(data, encoding), promise);
+  public void seek(int handle, double offset, String whence, Promise promise) {
+    taskRunner.runTask(AsyncTask.Lane.IO, new Callables.Seek(fileHandles, handle, (long) offset, whence), promise);
   }
 
   @ReactMethod
-  public void unGzipString(String data, String encoding, Promise promise) {
-    AsyncTask.runTask(new Callables.UnGzipString(data, encoding), promise);
+  public void close(int handle, Promise promise) {
+    taskRunner.runTask(AsyncTask.Lane.IO, new Callables.Close(fileHandles, handle), promise);
   }
 
   @ReactMethod
-  public void hash(String path, String algorithm, Promise promise) {
-    AsyncTask.runTask(new Callables.Hash(reactContext, path, algorithm), promise);
+  public void cancel(String taskId, Promise promise) {
+    promise.resolve(taskRunner.cancel(taskId));
   }
 
   @ReactMethod
@@ -315,17 +519,15 @@ public class FileSystemModule extends ReactContextBaseJavaModule {
                 else {
                   WritableMap params = Utils.buildDocumentFile(fileUri);
                   Callable<Object> callable;
-                  if (toPath == null) callable = new Callables.ReadFile(reactContext, fileUri.getUri().toString(), encoding);
+                  if (toPath == null) callable = new Callables.ReadFile(reactContext, fileUri.getUri().toString(), encoding, appender);
                   else {
                     String path = toPath + "/" + fileUri.getName();
                     Log.d("FileSystem", "openDocument toPath: " + path);
-                    callable = new Callables.Cp(reactContext, fileUri.getUri().toString(), path);
+                    callable = new Callables.Cp(reactContext, fileUri.getUri().toString(), path, null, appender, diskUsage);
                     params.putString("data", path);
                   }
-                  AsyncTask.TaskRunner taskRunner = new AsyncTask.TaskRunner();
                   try {
-                    taskRunner.executeAsync(callable, (Object result) -> {
-                      taskRunner.shutdown();
+                    taskRunner.executeAsync(toPath == null ? AsyncTask.Lane.IO : AsyncTask.Lane.BULK, callable, (Object result) -> {
                       if (result instanceof Exception) {
                         promise.reject("-1", ((Exception) result).getMessage());
                       } else {
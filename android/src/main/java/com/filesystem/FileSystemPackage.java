@@ -12,11 +12,50 @@ import java.util.Collections;
 import java.util.List;
 
 public class FileSystemPackage implements ReactPackage {
+  private final int metadataPoolSize;
+  private final int ioPoolSize;
+  private final int bulkPoolSize;
+  private final int queueSize;
+  private final boolean deliverOnMainThread;
+
+  public FileSystemPackage() {
+    this(AsyncTask.DEFAULT_POOL_SIZE, AsyncTask.DEFAULT_QUEUE_SIZE);
+  }
+  /**
+   * @param poolSize max number of worker threads of the metadata and io lanes, the bulk lane gets half of it
+   * @param queueSize max number of pending tasks per lane, calls beyond it are rejected
+   */
+  public FileSystemPackage(int poolSize, int queueSize) {
+    this(poolSize, poolSize, Math.max(1, poolSize / 2), queueSize);
+  }
+  /**
+   * @param metadataPoolSize max number of worker threads running ls, stat, exists, mkdir, rename
+   * @param ioPoolSize max number of worker threads running small reads and writes
+   * @param bulkPoolSize max number of worker threads running cp, mv, gzip, unGzip, hash
+   * @param queueSize max number of pending tasks per lane, calls beyond it are rejected
+   */
+  public FileSystemPackage(int metadataPoolSize, int ioPoolSize, int bulkPoolSize, int queueSize) {
+    this(metadataPoolSize, ioPoolSize, bulkPoolSize, queueSize, false);
+  }
+  /**
+   * @param deliverOnMainThread settle the promises of calls on the main thread instead of the worker thread,
+   *   for apps whose promise or event handling must not run on a background thread
+   */
+  public FileSystemPackage(int metadataPoolSize, int ioPoolSize, int bulkPoolSize, int queueSize, boolean deliverOnMainThread) {
+    this.metadataPoolSize = metadataPoolSize;
+    this.ioPoolSize = ioPoolSize;
+    this.bulkPoolSize = bulkPoolSize;
+    this.queueSize = queueSize;
+    this.deliverOnMainThread = deliverOnMainThread;
+  }
+
   @NonNull
   @Override
   public List<NativeModule> createNativeModules(@NonNull ReactApplicationContext reactContext) {
     List<NativeModule> modules = new ArrayList<>();
-    modules.add(new FileSystemModule(reactContext));
+    AsyncTask.TaskRunner taskRunner = new AsyncTask.TaskRunner(metadataPoolSize, ioPoolSize, bulkPoolSize, queueSize);
+    taskRunner.setDeliverOnMainThread(deliverOnMainThread);
+    modules.add(new FileSystemModule(reactContext, taskRunner));
     return modules;
   }
 
@@ -0,0 +1,204 @@
+package com.filesystem;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+
+/**
+ * Recursive listing of a plain or document tree. Each directory is a fork/join action, its subdirectories are
+ * forked so idle workers take them over, matches are streamed to JS in chunks as WALK_CHUNK events.
+ * Symbolic links are reported but not followed.
+ */
+public class FileWalker {
+  public static final String TYPE_FILE = "file";
+  public static final String TYPE_DIRECTORY = "directory";
+  // pending matches are sent at least this often while the walk runs
+  static final long MAX_CHUNK_DELAY = 250;
+
+  static class Filter {
+    // matched against the name, or against the path relative to the root when it has a '/'
+    @Nullable final String glob;
+    final long minSize;
+    // depth of the children of the root is 1, negative for no limit
+    final int maxDepth;
+    final long modifiedAfter;
+    // TYPE_FILE, TYPE_DIRECTORY or null for both
+    @Nullable final String type;
+    Filter(@Nullable String glob, long minSize, int maxDepth, long modifiedAfter, @Nullable String type) {
+      this.glob = glob;
+      this.minSize = minSize;
+      this.maxDepth = maxDepth;
+      this.modifiedAfter = modifiedAfter;
+      this.type = type;
+    }
+  }
+
+  private final Filter filter;
+  @Nullable private final Pattern glob;
+  private final boolean globPath;
+  private final EntryStream stream;
+  private final TaskHandle task;
+
+  private FileWalker(Filter filter, EntryStream stream, TaskHandle task) {
+    this.filter = filter;
+    this.glob = filter.glob == null ? null : compileGlob(filter.glob);
+    this.globPath = filter.glob != null && filter.glob.indexOf('/') >= 0;
+    this.stream = stream;
+    this.task = task;
+  }
+
+  /**
+   * Walk the tree under `path` and send the matching entries, then a WALK_END event.
+   * An unreadable root fails the call, unreadable subdirectories are skipped.
+   * @return number of matches
+   */
+  public static int walk(ReactApplicationContext reactContext, ForkJoinPool pool, String path, Filter filter, int chunkSize, FileSystemEvent event, TaskHandle task) throws IOException {
+    EntryStream stream = new EntryStream(event, FileSystemEvent.WALK_CHUNK, task, chunkSize);
+    String error = null;
+    try {
+      FileWalker walker = new FileWalker(filter, stream, task);
+      FsFile root = new FsFile(reactContext, path);
+      if (!root.isDirectory()) throw new IOException("not a directory: " + path);
+      ArrayList<FsFile> children = root.ls();
+      if (filter.maxDepth != 0) {
+        try {
+          pool.invoke(walker.new DirectoryAction(null, children, "", 1));
+        } catch (RuntimeException e) {
+          // the pool may rethrow a copy of a worker exception without its message
+          task.throwIfCanceled();
+          throw e;
+        }
+      }
+      stream.flush();
+      return stream.getTotal();
+    } catch (IOException | RuntimeException e) {
+      error = e.getMessage() == null ? e.toString() : e.getMessage();
+      throw e;
+    } finally {
+      stream.end(FileSystemEvent.WALK_END, error);
+    }
+  }
+
+  private class DirectoryAction extends RecursiveAction {
+    @Nullable private final FsFile dir;
+    @Nullable private final ArrayList<FsFile> children;
+    private final String relativePath;
+    private final int depth;
+    DirectoryAction(@Nullable FsFile dir, @Nullable ArrayList<FsFile> children, String relativePath, int depth) {
+      this.dir = dir;
+      this.children = children;
+      this.relativePath = relativePath;
+      this.depth = depth;
+    }
+
+    @Override
+    protected void compute() {
+      task.throwIfCanceled();
+      ArrayList<FsFile> files = children;
+      if (files == null) {
+        try {
+          files = dir.ls();
+        } catch (IOException e) {
+          return;
+        }
+      }
+      ArrayList<DirectoryAction> subdirectories = new ArrayList<>();
+      for (FsFile file : files) {
+        file.readStat();
+        String name = file.getName();
+        if (name == null) name = "";
+        String path = relativePath.isEmpty() ? name : relativePath + "/" + name;
+        boolean isDirectory = file.isDirectory();
+        if (matches(file, globPath ? path : name, isDirectory)) stream.push(file.buildFileInfo());
+        if (isDirectory && (filter.maxDepth < 0 || depth < filter.maxDepth)) {
+          subdirectories.add(new DirectoryAction(file, null, path, depth + 1));
+        }
+      }
+      stream.flushIfDue(MAX_CHUNK_DELAY);
+      invokeAll(subdirectories);
+    }
+  }
+
+  private boolean matches(FsFile file, String name, boolean isDirectory) {
+    if (filter.type != null) {
+      if (filter.type.equals(TYPE_DIRECTORY) ? !isDirectory : !file.isFile()) return false;
+    }
+    if (filter.minSize > 0 && (isDirectory || file.length() < filter.minSize)) return false;
+    if (filter.modifiedAfter > 0 && file.lastModified() <= filter.modifiedAfter) return false;
+    return glob == null || glob.matcher(name).matches();
+  }
+
+  /**
+   * Translate a glob to a regex: `*` and `?` do not cross a '/', `**` does, `[!a-z]` is a negated set,
+   * `{a,b}` is a group of alternatives and `\` escapes the next character.
+   */
+  static Pattern compileGlob(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int groupDepth = 0;
+    int length = glob.length();
+    for (int i = 0; i < length; i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '*':
+          if (i + 1 < length && glob.charAt(i + 1) == '*') {
+            i++;
+            if (i + 1 < length && glob.charAt(i + 1) == '/') {
+              // "**/" also matches no directory at all
+              i++;
+              regex.append("(?:.*/)?");
+            } else regex.append(".*");
+          } else regex.append("[^/]*");
+          break;
+        case '?':
+          regex.append("[^/]");
+          break;
+        case '[': {
+          // a ']' right after the opening bracket is part of the set
+          int start = i + 1 < length && glob.charAt(i + 1) == '!' ? i + 2 : i + 1;
+          int end = glob.indexOf(']', start + 1);
+          if (end < 0) {
+            regex.append("\\[");
+            break;
+          }
+          regex.append('[');
+          if (start == i + 2) regex.append('^');
+          for (int j = start; j < end; j++) {
+            char s = glob.charAt(j);
+            if (s == '\\' || s == '[' || s == ']' || s == '&' || (s == '^' && j == start)) regex.append('\\');
+            regex.append(s);
+          }
+          regex.append(']');
+          i = end;
+          break;
+        }
+        case '{':
+          groupDepth++;
+          regex.append("(?:");
+          break;
+        case '}':
+          if (groupDepth > 0) {
+            groupDepth--;
+            regex.append(')');
+          } else regex.append("\\}");
+          break;
+        case ',':
+          regex.append(groupDepth > 0 ? "|" : ",");
+          break;
+        case '\\':
+          if (i + 1 < length) c = glob.charAt(++i);
+          // fall through
+        default:
+          if ("\\.^$+*?()|{}[]".indexOf(c) >= 0) regex.append('\\');
+          regex.append(c);
+      }
+    }
+    if (groupDepth > 0) throw new IllegalArgumentException("unclosed group in glob: " + glob);
+    return Pattern.compile(regex.toString());
+  }
+}
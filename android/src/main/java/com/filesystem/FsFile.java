@@ -4,7 +4,20 @@ import static com.filesystem.Utils.isContentUri;
 import static com.filesystem.Utils.isTreeUri;
 import static com.filesystem.Utils.parsePathToFile;
 
+import android.content.ContentResolver;
+import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
 
 import androidx.documentfile.provider.DocumentFile;
 
@@ -13,14 +26,51 @@ import com.facebook.react.bridge.WritableMap;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
 
 public class FsFile {
   final ReactApplicationContext context;
   private File file = null;
   private DocumentFile dFile = null;
+  // metadata of a document read by the listing of its parent, saves a provider query per getter
+  @Nullable private DocumentInfo info = null;
+  // metadata of a plain file read by readStat(), saves a syscall per getter
+  @Nullable private StructStat stat = null;
+
+  static class DocumentInfo {
+    static final String[] PROJECTION = {
+      Document.COLUMN_DOCUMENT_ID,
+      Document.COLUMN_DISPLAY_NAME,
+      Document.COLUMN_MIME_TYPE,
+      Document.COLUMN_SIZE,
+      Document.COLUMN_LAST_MODIFIED,
+      Document.COLUMN_FLAGS,
+    };
+    final String documentId;
+    final String name;
+    @Nullable final String mimeType;
+    final long size;
+    final long lastModified;
+    final int flags;
+    DocumentInfo(Cursor cursor) {
+      this.documentId = cursor.getString(0);
+      this.name = cursor.getString(1);
+      this.mimeType = cursor.isNull(2) ? null : cursor.getString(2);
+      this.size = cursor.isNull(3) ? 0 : cursor.getLong(3);
+      this.lastModified = cursor.isNull(4) ? 0 : cursor.getLong(4);
+      this.flags = cursor.isNull(5) ? 0 : cursor.getInt(5);
+    }
+    boolean isDirectory() {
+      return Document.MIME_TYPE_DIR.equals(mimeType);
+    }
+    boolean isFile() {
+      return !isDirectory() && mimeType != null && !mimeType.isEmpty();
+    }
+  }
   FsFile(ReactApplicationContext context, String path) {
     this.context = context;
     if (isContentUri(path)) {
@@ -45,17 +95,56 @@ public class FsFile {
     this.context = context;
     this.dFile = file;
   }
+  FsFile(ReactApplicationContext context, DocumentFile file, @Nullable DocumentInfo info) {
+    this.context = context;
+    this.dFile = file;
+    this.info = info;
+  }
 
   public boolean isDocFile() {
     return this.file == null;
   }
 
+  public String getPath() {
+    return isDocFile()
+      ? this.dFile.getUri().toString()
+      : this.file.getAbsolutePath();
+  }
+
+  public String getName() {
+    if (this.info != null) return this.info.name;
+    return isDocFile()
+      ? this.dFile.getName()
+      : this.file.getName();
+  }
+
+  /**
+   * Read the metadata of a plain file with one lstat, the getters use it from then on.
+   * A symbolic link reports itself instead of its target.
+   */
+  void readStat() {
+    if (isDocFile() || this.stat != null) return;
+    try {
+      this.stat = Os.lstat(this.file.getPath());
+    } catch (ErrnoException ignored) {}
+  }
+
   public boolean isDirectory() {
+    if (this.info != null) return this.info.isDirectory();
+    if (this.stat != null) return OsConstants.S_ISDIR(this.stat.st_mode);
     return isDocFile()
       ? this.dFile.isDirectory()
       : this.file.isDirectory();
   }
 
+  public boolean isFile() {
+    if (this.info != null) return this.info.isFile();
+    if (this.stat != null) return OsConstants.S_ISREG(this.stat.st_mode);
+    return isDocFile()
+      ? this.dFile.isFile()
+      : this.file.isFile();
+  }
+
   public FsFile getParentFile() {
     return isDocFile()
       ? new FsFile(context, this.dFile.getParentFile())
@@ -68,20 +157,87 @@ public class FsFile {
       : this.file.exists();
   }
 
+  public long length() {
+    if (this.info != null) return this.info.size;
+    if (this.stat != null) return this.stat.st_size;
+    return isDocFile()
+      ? this.dFile.length()
+      : this.file.length();
+  }
+
+  public long lastModified() {
+    if (this.info != null) return this.info.lastModified;
+    if (this.stat != null) return Utils.getLastModified(this.stat);
+    return isDocFile()
+      ? this.dFile.lastModified()
+      : this.file.lastModified();
+  }
+
+  /**
+   * Called with each child while the directory is read.
+   */
+  interface ChildVisitor {
+    void visit(FsFile child) throws IOException;
+  }
+
   public ArrayList<FsFile> ls() throws IOException {
     ArrayList<FsFile> list = new ArrayList<>();
+    ls(list::add);
+    return list;
+  }
+
+  /**
+   * Visit the children without collecting them, a tree document is visited row by row of its provider query.
+   */
+  public void ls(ChildVisitor visitor) throws IOException {
     if (isDocFile()) {
       if (!this.dFile.canRead()) throw new IOException("permission denied");
+      if (lsDocuments(visitor)) return;
       DocumentFile[] files = this.dFile.listFiles();
-      for (DocumentFile f: files) list.add(new FsFile(this.context, f));
+      for (DocumentFile f: files) visitor.visit(new FsFile(this.context, f));
     } else {
       if (!this.file.canRead()) throw new IOException("permission denied");
-      File[] files = this.file.listFiles();
-      if (files != null) for (File f: files) list.add(new FsFile(this.context, f));
+      String[] names = this.file.list();
+      if (names != null) for (String name: names) visitor.visit(new FsFile(this.context, new File(this.file, name)));
     }
+  }
 
+  /**
+   * The children sorted by name, the order of a plain listing is not stable between calls.
+   */
+  public ArrayList<FsFile> lsSorted() throws IOException {
+    ArrayList<FsFile> list = ls();
+    final HashMap<FsFile, String> names = new HashMap<>();
+    for (FsFile f : list) names.put(f, f.getName());
+    Collections.sort(list, (a, b) -> compareNames(names.get(a), names.get(b)));
     return list;
   }
+  private static int compareNames(@Nullable String a, @Nullable String b) {
+    if (a == null) return b == null ? 0 : -1;
+    if (b == null) return 1;
+    return a.compareTo(b);
+  }
+
+  // list the children of a tree document and their metadata with one provider query
+  private boolean lsDocuments(ChildVisitor visitor) throws IOException {
+    Uri uri = this.dFile.getUri();
+    if (!isTreeUri(uri)) return false;
+    Uri childrenUri;
+    try {
+      childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(uri, DocumentsContract.getDocumentId(uri));
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    try (Cursor cursor = context.getContentResolver().query(childrenUri, DocumentInfo.PROJECTION, null, null, null)) {
+      if (cursor == null) return false;
+      while (cursor.moveToNext()) {
+        DocumentInfo info = new DocumentInfo(cursor);
+        Uri childUri = DocumentsContract.buildDocumentUriUsingTree(uri, info.documentId);
+        visitor.visit(new FsFile(this.context, DocumentFile.fromTreeUri(this.context, childUri), info));
+      }
+      return true;
+    }
+  }
 
   public void mkdir() {
     if (isDocFile()) {
@@ -115,51 +271,214 @@ public class FsFile {
   }
 
   public void mv(String toPath) throws IOException {
+    mv(toPath, null);
+  }
+  public void mv(String toPath, @Nullable TaskHandle task) throws IOException {
+    if (providerMove(toPath)) return;
     Uri uri = Utils.createDocumentFileUri(context, toPath);
 
     if (this.isDocFile()) {
-      if (uri == null) {
-        File desFile = new FsFile(this.context, toPath).file;
-        try (InputStream inputStream = Utils.createInputStream(this.context, this.dFile);
-             OutputStream outputStream = Utils.createOutputStream(desFile)) {
-          byte[] buffer = new byte[1024];
-          int length;
-          while ((length = inputStream.read(buffer)) > 0) {
-            outputStream.write(buffer, 0, length);
-          }
-        }
-      } else {
-        try (InputStream inputStream = Utils.createInputStream(this.context, this.dFile);
-             OutputStream outputStream = Utils.createOutputStream(this.context, uri)) {
-          byte[] buffer = new byte[1024];
-          int length;
-          while ((length = inputStream.read(buffer)) > 0) {
-            outputStream.write(buffer, 0, length);
-          }
-        }
-      }
+      File desFile = uri == null ? new FsFile(this.context, toPath).file : null;
+      FileCopier.copy(this.context, Utils.openFileDescriptor(this.context, this.dFile.getUri().toString(), "r"), uri, desFile, task);
       this.dFile.delete();
     } else {
       if (uri == null) {
         File desFile = new FsFile(this.context, toPath).file;
-        this.file.renameTo(desFile);
+        File pFile = desFile.getParentFile();
+        if (pFile != null && !pFile.exists()) pFile.mkdirs();
+        if (this.file.renameTo(desFile)) return;
+        // rename fails across volumes, e.g. from the internal storage to an sd card
+        if (this.file.isDirectory()) throw new IOException("can not move a directory across volumes: " + this.file.getPath());
+        copyVerified(null, desFile, task);
       } else {
-        try (InputStream inputStream = Utils.createInputStream(this.file);
-             OutputStream outputStream = Utils.createOutputStream(this.context, uri)) {
-          byte[] buffer = new byte[1024];
-          int length;
-          while ((length = inputStream.read(buffer)) > 0) {
-            outputStream.write(buffer, 0, length);
-          }
+        copyVerified(uri, null, task);
+      }
+      if (!this.file.delete()) throw new IOException("delete source file failed: " + this.file.getPath());
+    }
+  }
+
+  // the source is only deleted after the whole copy reached storage
+  private void copyVerified(@Nullable Uri uri, @Nullable File desFile, @Nullable TaskHandle task) throws IOException {
+    long size = this.file.length();
+    long copied = FileCopier.copy(this.context, ParcelFileDescriptor.open(this.file, ParcelFileDescriptor.MODE_READ_ONLY), uri, desFile, true, task);
+    if (copied != size || (desFile != null && desFile.length() != size)) {
+      Utils.deleteOutput(this.context, uri, desFile);
+      throw new IOException("copy size mismatch, expected " + size + " bytes but copied " + copied);
+    }
+  }
+
+  /**
+   * Move a document by its provider when the provider supports it, e.g. a move within one tree is a rename in place.
+   * @return false if the provider can not do it, nothing was changed then
+   */
+  public boolean providerMove(String toPath) throws IOException {
+    return transferDocument(toPath, true);
+  }
+
+  /**
+   * Copy a document by its provider when the provider supports it, the content is not streamed through the app.
+   * @return false if the provider can not do it, nothing was changed then
+   */
+  public boolean providerCopy(String toPath) throws IOException {
+    return transferDocument(toPath, false);
+  }
+
+  private boolean transferDocument(String toPath, boolean move) throws IOException {
+    if (!isDocFile() || !isContentUri(toPath) || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return false;
+    Uri sourceUri = this.dFile.getUri();
+    int index = toPath.lastIndexOf("/");
+    Uri targetDirUri = Uri.parse(toPath.substring(0, index));
+    String name = toPath.substring(index + 1);
+    // documents can only be moved or copied within one provider
+    if (!Objects.equals(sourceUri.getAuthority(), targetDirUri.getAuthority())) return false;
+
+    int flags = queryDocumentFlags(sourceUri);
+    if ((flags & (move ? Document.FLAG_SUPPORTS_MOVE : Document.FLAG_SUPPORTS_COPY)) == 0) return false;
+    // the moved or copied document keeps its name, a different target name needs a rename
+    String sourceName = this.dFile.getName();
+    boolean rename = !name.equals(sourceName);
+
+    DocumentFile targetDir = DocumentFile.fromTreeUri(context, targetDirUri);
+    if (targetDir == null || !targetDir.exists()) throw new IOException("dest dir not exists.");
+    // a provider picks a free name like "name (1)" when the target exists, streaming replaces it instead.
+    // a move is not undone cheaply, the target is checked up front
+    if (move && hasChild(targetDir.getUri(), name)) return false;
+    Uri sourceParentUri = null;
+    if (move) {
+      sourceParentUri = getParentDocumentUri();
+      if (sourceParentUri == null) return false;
+    }
+    ContentResolver resolver = context.getContentResolver();
+    Uri result;
+    try {
+      result = move
+        ? DocumentsContract.moveDocument(resolver, sourceUri, sourceParentUri, targetDir.getUri())
+        : DocumentsContract.copyDocument(resolver, sourceUri, targetDir.getUri());
+    } catch (Exception e) {
+      // e.g. UnsupportedOperationException, IllegalStateException, SecurityException or FileNotFoundException of the provider
+      Log.w("FileSystem", (move ? "move" : "copy") + " document failed, streaming instead: " + e.getMessage());
+      return false;
+    }
+    if (result == null) return false;
+    if (rename) {
+      Uri renamed = null;
+      // the rename flag of the source says nothing about the new document
+      if ((queryDocumentFlags(result) & Document.FLAG_SUPPORTS_RENAME) != 0) {
+        try {
+          renamed = DocumentsContract.renameDocument(resolver, result, name);
+        } catch (Exception e) {
+          Log.w("FileSystem", "rename document failed: " + e.getMessage());
         }
       }
-      this.file.delete();
+      if (renamed == null) {
+        undoTransfer(result, move, targetDir.getUri(), sourceParentUri, sourceName);
+        return false;
+      }
+      result = renamed;
+    }
+    if (!name.equals(queryDisplayName(result))) {
+      undoTransfer(result, move, targetDir.getUri(), sourceParentUri, sourceName);
+      return false;
+    }
+    return true;
+  }
+
+  // put back a document the provider did not place at the requested name, the caller streams it instead
+  private void undoTransfer(Uri result, boolean move, Uri targetDirUri, @Nullable Uri sourceParentUri, String sourceName) throws IOException {
+    ContentResolver resolver = context.getContentResolver();
+    try {
+      if (!move) {
+        if (DocumentsContract.deleteDocument(resolver, result)) return;
+      } else {
+        Uri restored = DocumentsContract.moveDocument(resolver, result, targetDirUri, sourceParentUri);
+        if (restored != null && (Objects.equals(sourceName, queryDisplayName(restored))
+          || DocumentsContract.renameDocument(resolver, restored, sourceName) != null)) return;
+      }
+    } catch (Exception e) {
+      Log.w("FileSystem", "undo document " + (move ? "move" : "copy") + " failed: " + e.getMessage());
+    }
+    throw new IOException("document " + (move ? "moved" : "copied") + " to another name: " + result);
+  }
+
+  /**
+   * Delete a directory document and its whole subtree with one provider call, the provider removes the children.
+   * @return false if the provider does not support it or the delete failed, the children are deleted one by one then
+   */
+  public boolean providerDeleteTree() {
+    if (!isDocFile()) return false;
+    Uri uri = this.dFile.getUri();
+    if (!isTreeUri(uri)) return false;
+    int flags = this.info != null ? this.info.flags : queryDocumentFlags(uri);
+    if ((flags & Document.FLAG_SUPPORTS_DELETE) == 0) return false;
+    try {
+      return DocumentsContract.deleteDocument(context.getContentResolver(), uri);
+    } catch (Exception e) {
+      Log.w("FileSystem", "delete document tree failed: " + e.getMessage());
+      return false;
+    }
+  }
+
+  // one query of the names only, stops at the first match. true when the directory can not be queried
+  private boolean hasChild(Uri dirUri, String name) {
+    Uri childrenUri;
+    try {
+      childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(dirUri, DocumentsContract.getDocumentId(dirUri));
+    } catch (IllegalArgumentException e) {
+      return true;
+    }
+    try (Cursor cursor = context.getContentResolver().query(childrenUri, new String[]{ Document.COLUMN_DISPLAY_NAME }, null, null, null)) {
+      if (cursor == null) return true;
+      while (cursor.moveToNext()) {
+        if (name.equals(cursor.getString(0))) return true;
+      }
+      return false;
+    } catch (Exception e) {
+      Log.w("FileSystem", "query document children failed: " + e.getMessage());
+      return true;
+    }
+  }
+
+  @Nullable
+  private String queryDisplayName(Uri uri) {
+    try (Cursor cursor = context.getContentResolver().query(uri, new String[]{ Document.COLUMN_DISPLAY_NAME }, null, null, null)) {
+      if (cursor != null && cursor.moveToFirst()) return cursor.getString(0);
+    } catch (Exception e) {
+      Log.w("FileSystem", "query document name failed: " + e.getMessage());
+    }
+    return null;
+  }
+
+  private int queryDocumentFlags(Uri uri) {
+    try (Cursor cursor = context.getContentResolver().query(uri, new String[]{ Document.COLUMN_FLAGS }, null, null, null)) {
+      if (cursor != null && cursor.moveToFirst()) return cursor.getInt(0);
+    } catch (Exception e) {
+      Log.w("FileSystem", "query document flags failed: " + e.getMessage());
+    }
+    return 0;
+  }
+
+  // moveDocument needs the parent, it is unknown for a document uri that was not listed from its parent
+  @Nullable
+  private Uri getParentDocumentUri() {
+    DocumentFile parent = this.dFile.getParentFile();
+    if (parent != null) return parent.getUri();
+    Uri uri = this.dFile.getUri();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && isTreeUri(uri)) {
+      try {
+        DocumentsContract.Path path = DocumentsContract.findDocumentPath(context.getContentResolver(), uri);
+        List<String> ids = path == null ? null : path.getPath();
+        if (ids != null && ids.size() >= 2) return DocumentsContract.buildDocumentUriUsingTree(uri, ids.get(ids.size() - 2));
+      } catch (Exception e) {
+        Log.w("FileSystem", "find document path failed: " + e.getMessage());
+      }
     }
+    return null;
   }
 
   public WritableMap buildFileInfo() {
+    if (this.info != null) return Utils.buildDocumentFile(this.dFile.getUri(), this.info);
     return isDocFile()
       ? Utils.buildDocumentFile(this.dFile)
-      : Utils.buildFile(this.file);
+      : Utils.buildFile(this.file, this.stat);
   }
 }
@@ -0,0 +1,225 @@
+package com.filesystem;
+
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads lines of large text files without loading the whole file, only the requested lines are decoded.
+ * Forward reads keep a sparse index of line offsets per file, valid while the size and the modified time are unchanged,
+ * the indexes are cached per module.
+ * Lines end with \n, a trailing \r is removed.
+ */
+public class LineReader {
+  // a checkpoint is kept every this many lines
+  static final int INDEX_INTERVAL = 1000;
+  static final int CHUNK_SIZE = 64 * 1024;
+  static final int MAX_CACHED_INDEXES = 16;
+
+  /**
+   * Line indexes of recently read files, one cache per module.
+   */
+  static class Cache {
+    private final Map<String, LineIndex> indexes = new LinkedHashMap<String, LineIndex>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, LineIndex> eldest) {
+        return size() > MAX_CACHED_INDEXES;
+      }
+    };
+
+    // the index of a file, a new one when the file changed
+    synchronized LineIndex get(String path, long size, long lastModified) {
+      String key = Utils.getPathKey(path);
+      LineIndex index = indexes.get(key);
+      if (index == null || index.size != size || index.lastModified != lastModified) {
+        index = new LineIndex(size, lastModified);
+        indexes.put(key, index);
+      }
+      return index;
+    }
+  }
+
+  static class LineIndex {
+    final long size;
+    final long lastModified;
+    // offsets[i] is the byte offset of line i * INDEX_INTERVAL
+    private long[] offsets = new long[16];
+    private int count = 1;
+    LineIndex(long size, long lastModified) {
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+    synchronized void add(int line, long offset) {
+      int i = line / INDEX_INTERVAL;
+      if (i != count) return;
+      if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+      offsets[count++] = offset;
+    }
+    // the nearest checkpoint at or before the line, {line, offset}
+    synchronized long[] floor(int line) {
+      int i = Math.min(line / INDEX_INTERVAL, count - 1);
+      return new long[]{ (long) i * INDEX_INTERVAL, offsets[i] };
+    }
+  }
+
+  // bytes of the line being read, grows to the longest line
+  static class LineBuffer {
+    byte[] data = new byte[256];
+    int length = 0;
+    void append(byte[] b, int off, int len) {
+      if (length + len > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, length + len));
+      System.arraycopy(b, off, data, length, len);
+      length += len;
+    }
+    String take() {
+      int end = length > 0 && data[length - 1] == '\r' ? length - 1 : length;
+      String line = new String(data, 0, end, StandardCharsets.UTF_8);
+      length = 0;
+      return line;
+    }
+  }
+
+  /**
+   * @param startLine first line to read, from 0
+   * @param count max number of lines, fewer are returned at the end of the file
+   * @param cache line indexes of the module, null to read from the start without an index
+   */
+  public static WritableArray readLines(ReactApplicationContext context, @Nullable Cache cache, String path, int startLine, int count) throws IOException {
+    WritableArray lines = Arguments.createArray();
+    if (count <= 0) return lines;
+    ParcelFileDescriptor pfd = Utils.openFileDescriptor(context, path, "r");
+    try (FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+      FileChannel channel = inputStream.getChannel();
+      long size = pfd.getStatSize();
+      LineIndex index = null;
+      int line = 0;
+      // a pipe from a provider can not seek, it is read from the start
+      if (size >= 0 && cache != null) {
+        index = cache.get(path, size, new FsFile(context, path).lastModified());
+        long[] checkpoint = index.floor(startLine);
+        line = (int) checkpoint[0];
+        channel.position(checkpoint[1]);
+      }
+      scan(channel, index, line, startLine, count, lines);
+    }
+    return lines;
+  }
+
+  // read forward from the line at the channel position, skipping lines before startLine
+  private static void scan(FileChannel channel, @Nullable LineIndex index, int line, int startLine, int count, WritableArray lines) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    byte[] data = buffer.array();
+    LineBuffer lineBuffer = new LineBuffer();
+    long position = channel.position();
+    // a long, a count up to Integer.MAX_VALUE must not wrap around
+    long endLine = (long) startLine + count;
+    int length;
+    while (line < endLine && (length = channel.read(buffer)) != -1) {
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        if (data[i] != '\n') continue;
+        if (line >= startLine) {
+          lineBuffer.append(data, start, i - start);
+          lines.pushString(lineBuffer.take());
+        }
+        line++;
+        start = i + 1;
+        if (index != null && line % INDEX_INTERVAL == 0) index.add(line, position + start);
+        if (line == endLine) return;
+      }
+      if (line >= startLine) lineBuffer.append(data, start, length - start);
+      position += length;
+      buffer.clear();
+    }
+    // the last line has no line break
+    if (line >= startLine && line < endLine && lineBuffer.length > 0) lines.pushString(lineBuffer.take());
+  }
+
+  /**
+   * Read the last `count` lines, the file is scanned backward from its end.
+   */
+  public static WritableArray tail(ReactApplicationContext context, String path, int count) throws IOException {
+    WritableArray lines = Arguments.createArray();
+    if (count <= 0) return lines;
+    ParcelFileDescriptor pfd = Utils.openFileDescriptor(context, path, "r");
+    try (FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+      FileChannel channel = inputStream.getChannel();
+      long size = pfd.getStatSize();
+      if (size < 0) return tailStream(channel, count);
+
+      ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+      byte[] data = buffer.array();
+      long end = size;
+      // a line break at the end of the file does not start another line
+      if (end > 0) {
+        buffer.limit(1);
+        channel.read(buffer, end - 1);
+        if (data[0] == '\n') end--;
+      }
+      long start = 0;
+      int found = 0;
+      long position = end;
+      search:
+      while (position > 0) {
+        int length = (int) Math.min(CHUNK_SIZE, position);
+        position -= length;
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, position + buffer.position()) == -1) break;
+        }
+        for (int i = buffer.position() - 1; i >= 0; i--) {
+          if (data[i] == '\n' && ++found == count) {
+            start = position + i + 1;
+            break search;
+          }
+        }
+      }
+      channel.position(start);
+      scan(channel, null, 0, 0, count, lines);
+    }
+    return lines;
+  }
+
+  // keep the last lines of a stream that can not be read backward
+  private static WritableArray tailStream(FileChannel channel, int count) throws IOException {
+    ArrayDeque<String> last = new ArrayDeque<>();
+    ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    byte[] data = buffer.array();
+    LineBuffer lineBuffer = new LineBuffer();
+    int length;
+    while ((length = channel.read(buffer)) != -1) {
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        if (data[i] != '\n') continue;
+        lineBuffer.append(data, start, i - start);
+        last.addLast(lineBuffer.take());
+        if (last.size() > count) last.removeFirst();
+        start = i + 1;
+      }
+      lineBuffer.append(data, start, length - start);
+      buffer.clear();
+    }
+    if (lineBuffer.length > 0) {
+      last.addLast(lineBuffer.take());
+      if (last.size() > count) last.removeFirst();
+    }
+    WritableArray lines = Arguments.createArray();
+    for (String line : last) lines.pushString(line);
+    return lines;
+  }
+}
@@ -0,0 +1,66 @@
+package com.filesystem;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sorted listings of directories read page by page, keyed by the path.
+ * The first page (offset 0) lists and sorts the directory, the following pages are cut from the same listing,
+ * so a pass over the pages reads the directory once and sees one consistent listing. A listing is dropped
+ * after its last page, when it is not read for EXPIRE_AFTER milliseconds, or when the modified time of a plain
+ * directory changes. Documents have no reliable modified time and only expire.
+ */
+class ListingCache {
+  static final long EXPIRE_AFTER = 30_000;
+  static final int MAX_LISTINGS = 8;
+
+  private static class Listing {
+    final ArrayList<FsFile> files;
+    final long lastModified;
+    long lastAccess;
+    Listing(ArrayList<FsFile> files, long lastModified, long lastAccess) {
+      this.files = files;
+      this.lastModified = lastModified;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  private final Map<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+      return size() > MAX_LISTINGS;
+    }
+  };
+
+  /**
+   * A page of the children of `dir` sorted by name.
+   */
+  ArrayList<FsFile> page(FsFile dir, String path, int offset, int limit) throws IOException {
+    String key = Utils.getPathKey(path);
+    long now = System.currentTimeMillis();
+    long lastModified = dir.isDocFile() ? 0 : dir.lastModified();
+    Listing listing = null;
+    if (offset > 0) {
+      synchronized (listings) {
+        listing = listings.get(key);
+        if (listing != null && (now - listing.lastAccess > EXPIRE_AFTER || listing.lastModified != lastModified)) {
+          listings.remove(key);
+          listing = null;
+        }
+        if (listing != null) listing.lastAccess = now;
+      }
+    }
+    if (listing == null) listing = new Listing(dir.lsSorted(), lastModified, now);
+
+    ArrayList<FsFile> files = listing.files;
+    int from = Math.min(Math.max(0, offset), files.size());
+    int to = limit < 0 ? files.size() : (int) Math.min(files.size(), (long) from + limit);
+    synchronized (listings) {
+      if (to < files.size()) listings.put(key, listing);
+      else listings.remove(key);
+    }
+    return new ArrayList<>(files.subList(from, to));
+  }
+}
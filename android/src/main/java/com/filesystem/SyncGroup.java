@@ -0,0 +1,122 @@
+package com.filesystem;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+/**
+ * Syncs of written files and of their directories. A file is synced by its writer, writers of different files sync
+ * in parallel. Directory syncs are grouped: callers that arrive within a short window, or while the previous group
+ * is syncing, join one group that is synced by its first caller, the others wait for the result. A directory added
+ * twice to a group is synced once, e.g. the directory of several atomic writes.
+ */
+public class SyncGroup {
+  public static final long DEFAULT_WINDOW_MS = 2;
+
+  private final long windowMs;
+  @Nullable private Group pending = null;
+  private boolean syncing = false;
+
+  static class Target {
+    final String dirPath;
+    @Nullable IOException error = null;
+    Target(String dirPath) {
+      this.dirPath = dirPath;
+    }
+    void sync() {
+      try {
+        FileDescriptor dirFd = Os.open(dirPath, OsConstants.O_RDONLY, 0);
+        try {
+          Os.fsync(dirFd);
+        } finally {
+          Os.close(dirFd);
+        }
+      } catch (ErrnoException e) {
+        error = new IOException("sync failed: " + dirPath + ", " + e.getMessage());
+      }
+    }
+  }
+
+  static class Group {
+    final LinkedHashMap<String, Target> targets = new LinkedHashMap<>();
+    boolean hasLeader = false;
+    boolean done = false;
+  }
+
+  public SyncGroup(long windowMs) {
+    this.windowMs = windowMs;
+  }
+  public SyncGroup() {
+    this(DEFAULT_WINDOW_MS);
+  }
+
+  /**
+   * Flush the written data of an open file to storage, the descriptor must stay open until this returns.
+   */
+  public void syncFile(FileDescriptor fd) throws IOException {
+    fd.sync();
+  }
+
+  /**
+   * Flush the entries of a directory to storage, called after renaming a file into it.
+   */
+  public void syncDir(File dir) throws IOException {
+    String path = dir.getAbsolutePath();
+    sync(path, new Target(path));
+  }
+
+  private void sync(String key, Target target) throws IOException {
+    Group group;
+    boolean leader = false;
+    boolean interrupted = false;
+    synchronized (this) {
+      if (pending == null) pending = new Group();
+      group = pending;
+      Target joined = group.targets.get(key);
+      if (joined == null) group.targets.put(key, target);
+      else target = joined;
+
+      while (!group.done && (syncing || group.hasLeader)) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (!group.done) {
+        // wait a moment for concurrent writers to join the group
+        leader = true;
+        group.hasLeader = true;
+        if (windowMs > 0) {
+          try {
+            wait(windowMs);
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        pending = null;
+        syncing = true;
+      }
+    }
+    if (leader) {
+      try {
+        for (Target t : group.targets.values()) t.sync();
+      } finally {
+        synchronized (this) {
+          syncing = false;
+          group.done = true;
+          notifyAll();
+        }
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    if (target.error != null) throw target.error;
+  }
+}
@@ -0,0 +1,130 @@
+package com.filesystem;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Cancellation state of a long running call, long loops call {@link #throwIfCanceled()} between chunks.
+ */
+public class TaskHandle {
+  // a progress event is sent at most once per interval and only after enough bytes moved
+  static final long PROGRESS_INTERVAL_MS = 200;
+  static final long PROGRESS_MIN_BYTES = 64 * 1024;
+
+  final String id;
+  private final CancellationSignal signal = new CancellationSignal();
+  private volatile String reason = null;
+  @Nullable ScheduledFuture<?> timeoutFuture = null;
+
+  @Nullable private FileSystemEvent progressEvent = null;
+  private long totalBytes = -1;
+  private long bytesDone = 0;
+  private long startTime = 0;
+  private long lastEmitTime = 0;
+  private long lastEmitBytes = 0;
+
+  TaskHandle(String id) {
+    this.id = id;
+  }
+
+  public void cancel(String reason) {
+    if (this.reason == null) this.reason = reason;
+    signal.cancel();
+  }
+
+  public boolean isCanceled() {
+    return signal.isCanceled();
+  }
+
+  public void throwIfCanceled() {
+    if (signal.isCanceled()) throw new OperationCanceledException(reason == null ? "task canceled" : reason);
+  }
+
+  public CancellationSignal getCancellationSignal() {
+    return signal;
+  }
+
+  void setProgressEvent(@Nullable FileSystemEvent progressEvent) {
+    this.progressEvent = progressEvent;
+  }
+
+  void markStarted() {
+    startTime = System.nanoTime();
+  }
+
+  public boolean hasProgressListeners() {
+    return progressEvent != null && progressEvent.hasListeners();
+  }
+
+  public void setTotalBytes(long totalBytes) {
+    this.totalBytes = totalBytes;
+  }
+
+  /**
+   * Count transferred bytes, called by the worker thread running the task.
+   */
+  public void onProgress(long bytes) {
+    bytesDone += bytes;
+    if (progressEvent == null || !progressEvent.hasListeners()) return;
+    long now = System.nanoTime();
+    if (bytesDone != totalBytes
+      && (now - lastEmitTime < PROGRESS_INTERVAL_MS * 1_000_000 || bytesDone - lastEmitBytes < PROGRESS_MIN_BYTES)) return;
+    lastEmitTime = now;
+    lastEmitBytes = bytesDone;
+
+    double seconds = (now - startTime) / 1e9;
+    double throughput = seconds > 0 ? bytesDone / seconds : 0;
+    WritableMap params = Arguments.createMap();
+    params.putString("taskId", id);
+    params.putDouble("bytesDone", bytesDone);
+    params.putDouble("totalBytes", totalBytes);
+    params.putDouble("throughput", throughput);
+    params.putDouble("eta", totalBytes < 0 || throughput <= 0 ? -1 : Math.max(0, totalBytes - bytesDone) / throughput);
+    progressEvent.sendEvent(FileSystemEvent.PROGRESS, params);
+  }
+
+  /**
+   * Report the bytes read from the source stream as progress.
+   */
+  public InputStream track(InputStream inputStream, long totalBytes) {
+    setTotalBytes(totalBytes);
+    return new ProgressInputStream(inputStream, this);
+  }
+
+  static class ProgressInputStream extends FilterInputStream {
+    private final TaskHandle task;
+    ProgressInputStream(InputStream inputStream, TaskHandle task) {
+      super(inputStream);
+      this.task = task;
+    }
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) task.onProgress(1);
+      return b;
+    }
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+      int length = super.read(b, off, len);
+      if (length > 0) task.onProgress(length);
+      return length;
+    }
+    @Override
+    public long skip(long n) throws IOException {
+      long length = super.skip(n);
+      if (length > 0) task.onProgress(length);
+      return length;
+    }
+  }
+}
@@ -2,15 +2,24 @@ package com.filesystem;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.os.storage.StorageManager;
 import android.provider.DocumentsContract;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
 import android.util.Base64;
+import android.util.Log;
 import android.webkit.MimeTypeMap;
 
+import androidx.annotation.Nullable;
 import androidx.documentfile.provider.DocumentFile;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
 import java.io.File;
@@ -23,12 +32,21 @@ import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import kotlin.text.Charsets;
 
 public class Utils {
+  static final int READ_CHUNK_SIZE = 255 * 1024; // a multiple of 3, chunks encode to base64 without padding
+  // by extension, "" for unknown types
+  private static final ConcurrentHashMap<String, String> mimeTypes = new ConcurrentHashMap<>();
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+  private static final byte[] BASE64_TABLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
   public static boolean isContentUri(String path) {
     return path.startsWith("content://");
   }
@@ -38,9 +56,125 @@ public class Utils {
   public static String encodeBase64(byte[] data) {
     return new String(Base64.encode(data, Base64.NO_WRAP), StandardCharsets.UTF_8);
   }
+  public static String encodeBase64(byte[] data, int offset, int length) {
+    return new String(Base64.encode(data, offset, length, Base64.NO_WRAP), StandardCharsets.UTF_8);
+  }
+  /**
+   * Read a stream to the end into one array.
+   * @param sizeHint expected size, the array is allocated once when it is right, -1 if unknown
+   * @return the data, from 0 to the limit of the buffer
+   */
+  public static ByteBuffer readFully(InputStream inputStream, long sizeHint) throws IOException {
+    if (sizeHint > MAX_ARRAY_SIZE) throw new IOException("file too large: " + sizeHint);
+    byte[] data = new byte[sizeHint > 0 ? (int) sizeHint : READ_CHUNK_SIZE];
+    int count = 0;
+    while (true) {
+      if (count == data.length) {
+        // probe the end before growing, a correct size hint never grows
+        int b = inputStream.read();
+        if (b == -1) break;
+        if (count == MAX_ARRAY_SIZE) throw new IOException("file too large");
+        data = Arrays.copyOf(data, (int) Math.min(MAX_ARRAY_SIZE, Math.max((long) data.length * 2, READ_CHUNK_SIZE)));
+        data[count++] = (byte) b;
+      }
+      int bytesRead = inputStream.read(data, count, data.length - count);
+      if (bytesRead == -1) break;
+      count += bytesRead;
+    }
+    return ByteBuffer.wrap(data, 0, count);
+  }
+
+  /**
+   * Encode a stream to base64 chunk by chunk, without holding the raw data in memory.
+   * @param sizeHint expected size of the raw data, -1 if unknown
+   */
+  public static String readBase64(InputStream inputStream, long sizeHint) throws IOException {
+    long outSize = sizeHint >= 0 ? (sizeHint + 2) / 3 * 4 : READ_CHUNK_SIZE / 3 * 4;
+    if (outSize > MAX_ARRAY_SIZE) throw new IOException("file too large: " + sizeHint);
+    byte[] out = new byte[(int) outSize];
+    byte[] buffer = new byte[READ_CHUNK_SIZE];
+    int pending = 0;
+    int outLength = 0;
+    int bytesRead;
+    while ((bytesRead = inputStream.read(buffer, pending, buffer.length - pending)) != -1) {
+      pending += bytesRead;
+      int whole = pending - pending % 3;
+      out = ensureCapacity(out, outLength + whole / 3 * 4);
+      outLength = encodeBase64(buffer, whole, out, outLength);
+      pending -= whole;
+      if (pending > 0) System.arraycopy(buffer, whole, buffer, 0, pending);
+    }
+    if (pending > 0) {
+      out = ensureCapacity(out, outLength + 4);
+      outLength = encodeBase64(buffer, pending, out, outLength);
+    }
+    return new String(out, 0, outLength, StandardCharsets.US_ASCII);
+  }
+  private static byte[] ensureCapacity(byte[] data, int size) throws IOException {
+    if (size < 0 || size > MAX_ARRAY_SIZE) throw new IOException("file too large");
+    if (size <= data.length) return data;
+    return Arrays.copyOf(data, (int) Math.min(MAX_ARRAY_SIZE, Math.max((long) data.length * 2, size)));
+  }
+  /**
+   * Standard base64 with padding and no line wrap, same output as Base64.NO_WRAP.
+   * @return the new length of `out`
+   */
+  private static int encodeBase64(byte[] data, int length, byte[] out, int outOffset) {
+    int i = 0;
+    int o = outOffset;
+    for (int end = length - length % 3; i < end; i += 3) {
+      int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+      out[o++] = BASE64_TABLE[bits >>> 18];
+      out[o++] = BASE64_TABLE[(bits >>> 12) & 0x3f];
+      out[o++] = BASE64_TABLE[(bits >>> 6) & 0x3f];
+      out[o++] = BASE64_TABLE[bits & 0x3f];
+    }
+    int rest = length - i;
+    if (rest > 0) {
+      int bits = (data[i] & 0xff) << 16 | (rest == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+      out[o++] = BASE64_TABLE[bits >>> 18];
+      out[o++] = BASE64_TABLE[(bits >>> 12) & 0x3f];
+      out[o++] = rest == 2 ? BASE64_TABLE[(bits >>> 6) & 0x3f] : (byte) '=';
+      out[o++] = '=';
+    }
+    return o;
+  }
+
+  public static byte[] decodeData(String data, String encoding) {
+    return encoding.equals("base64") ? decodeBase64(data) : data.getBytes(StandardCharsets.UTF_8);
+  }
+  public static String encodeData(byte[] data, int offset, int length, String encoding) {
+    return encoding.equals("base64")
+      ? encodeBase64(data, offset, length)
+      : new String(data, offset, length, StandardCharsets.UTF_8);
+  }
   public static byte[] decodeBase64(String data) {
     return Base64.decode(data, Base64.DEFAULT);
   }
+  public static void putValue(WritableMap map, String key, @Nullable Object value) {
+    if (value == null) map.putNull(key);
+    else if (value instanceof Boolean) map.putBoolean(key, (Boolean) value);
+    else if (value instanceof Number) map.putDouble(key, ((Number) value).doubleValue());
+    else if (value instanceof String) map.putString(key, (String) value);
+    else if (value instanceof WritableMap) map.putMap(key, (WritableMap) value);
+    else if (value instanceof WritableArray) map.putArray(key, (WritableArray) value);
+    else map.putString(key, value.toString());
+  }
+  /**
+   * Length of `data` without a trailing multi-byte UTF-8 character that is cut off.
+   */
+  public static int getUtf8CompleteLength(byte[] data, int length) {
+    int i = length - 1;
+    int continuation = 0;
+    while (i >= 0 && continuation < 3 && (data[i] & 0xC0) == 0x80) {
+      i--;
+      continuation++;
+    }
+    if (i < 0) return length;
+    int lead = data[i] & 0xFF;
+    int need = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+    return continuation + 1 < need ? i : length;
+  }
   public static WritableMap buildDocumentFile(DocumentFile file) {
     WritableMap fileMap = Arguments.createMap();
     fileMap.putString("path", file.getUri().toString());
@@ -59,24 +193,75 @@ public class Utils {
     fileMap.putBoolean("canRead", file.canRead());
     return fileMap;
   }
+  /**
+   * Build from a row of a directory listing, the permission of the listed directory was checked.
+   */
+  public static WritableMap buildDocumentFile(Uri uri, FsFile.DocumentInfo info) {
+    WritableMap fileMap = Arguments.createMap();
+    fileMap.putString("path", uri.toString());
+    fileMap.putString("name", info.name);
+    boolean isFile = info.isFile();
+    fileMap.putBoolean("isDirectory", info.isDirectory());
+    fileMap.putBoolean("isFile", isFile);
+    if (isFile) {
+      fileMap.putString("mimeType", info.mimeType);
+      fileMap.putDouble("size", info.size);
+    } else {
+      fileMap.putString("mimeType", null);
+      fileMap.putDouble("size", 0);
+    }
+    fileMap.putDouble("lastModified", info.lastModified);
+    // DocumentFile.canRead is the uri permission and a known type
+    fileMap.putBoolean("canRead", info.mimeType != null && !info.mimeType.isEmpty());
+    return fileMap;
+  }
+  /**
+   * Every field comes from one stat call, a file that can not be stated is reported as missing.
+   */
   public static WritableMap buildFile(File file) {
+    return buildFile(file, null);
+  }
+  /**
+   * @param stat metadata already read for the file, it is read here if null
+   */
+  public static WritableMap buildFile(File file, @Nullable StructStat stat) {
     WritableMap fileMap = Arguments.createMap();
-    fileMap.putString("path", file.getAbsolutePath());
+    String path = file.getAbsolutePath();
+    fileMap.putString("path", path);
     fileMap.putString("name", file.getName());
-    fileMap.putBoolean("isDirectory", file.isDirectory());
-    boolean isFile = file.isFile();
+    if (stat == null) {
+      try {
+        stat = Os.stat(path);
+      } catch (ErrnoException ignored) {}
+    }
+    boolean isDirectory = stat != null && OsConstants.S_ISDIR(stat.st_mode);
+    boolean isFile = stat != null && OsConstants.S_ISREG(stat.st_mode);
+    fileMap.putBoolean("isDirectory", isDirectory);
     fileMap.putBoolean("isFile", isFile);
     if (isFile) {
       fileMap.putString("mimeType", getMimeTypeFromFileName(file.getName()));
-      fileMap.putDouble("size", file.length());
+      fileMap.putDouble("size", stat.st_size);
     } else {
       fileMap.putString("mimeType", null);
       fileMap.putDouble("size", 0);
     }
-    fileMap.putDouble("lastModified", file.lastModified());
-    fileMap.putBoolean("canRead", file.canRead());
+    fileMap.putDouble("lastModified", stat == null ? 0 : getLastModified(stat));
+    fileMap.putBoolean("canRead", stat != null && canRead(path, stat));
     return fileMap;
   }
+  static long getLastModified(StructStat stat) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) return stat.st_mtim.tv_sec * 1000 + stat.st_mtim.tv_nsec / 1_000_000;
+    return stat.st_mtime * 1000;
+  }
+  // the owner bits decide for files of the app, other files depend on supplementary groups and are checked by access
+  private static boolean canRead(String path, StructStat stat) {
+    if (stat.st_uid == Os.getuid()) return (stat.st_mode & OsConstants.S_IRUSR) != 0;
+    try {
+      return Os.access(path, OsConstants.R_OK);
+    } catch (ErrnoException e) {
+      return false;
+    }
+  }
   public static File parsePathToFile(String path) {
     if (path.contains("://")) {
       try {
@@ -88,11 +273,41 @@ public class Utils {
     }
     return new File(path);
   }
+  /**
+   * Key identifying the target of a path, used to order calls on the same file.
+   */
+  public static String getPathKey(String path) {
+    return isContentUri(path) ? path : parsePathToFile(path).getAbsolutePath();
+  }
   public static InputStream createInputStream(ReactApplicationContext context, String path) throws FileNotFoundException {
     return path.startsWith("content://")
       ? context.getContentResolver().openInputStream(Uri.parse(path))
       : new FileInputStream(parsePathToFile(path));
   }
+  /**
+   * Open a file descriptor of a file path or a content uri,
+   * `getStatSize()` of it is -1 when the provider returns a pipe instead of a seekable file.
+   */
+  public static ParcelFileDescriptor openFileDescriptor(ReactApplicationContext context, String path, String mode) throws FileNotFoundException {
+    if (isContentUri(path)) {
+      ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(Uri.parse(path), mode);
+      if (pfd == null) throw new FileNotFoundException("open file descriptor failed: " + path);
+      return pfd;
+    }
+    return ParcelFileDescriptor.open(parsePathToFile(path), ParcelFileDescriptor.parseMode(mode));
+  }
+  /**
+   * Open a file descriptor for writing, created the same way as the target of writeFile.
+   */
+  public static ParcelFileDescriptor openWriteFileDescriptor(ReactApplicationContext context, String path, boolean append) throws IOException {
+    String mode = append ? "wa" : "wt";
+    Uri uri = createDocumentFileUri(context, path);
+    if (uri != null) return openFileDescriptor(context, uri.toString(), mode);
+    File file = parsePathToFile(path);
+    File pFile = file.getParentFile();
+    if (pFile != null && !pFile.exists()) pFile.mkdirs();
+    return ParcelFileDescriptor.open(file, ParcelFileDescriptor.parseMode(mode));
+  }
   public static InputStream createInputStream(File file) throws FileNotFoundException {
     return new FileInputStream(file);
   }
@@ -100,6 +315,35 @@ public class Utils {
     return context.getContentResolver().openInputStream(file.getUri());
   }
 
+  /**
+   * Copy between streams, checking for cancellation between chunks.
+   */
+  public static void copyStream(InputStream inputStream, OutputStream outputStream, byte[] buffer, @Nullable TaskHandle task) throws IOException {
+    int length;
+    while ((length = inputStream.read(buffer)) > 0) {
+      if (task != null) task.throwIfCanceled();
+      outputStream.write(buffer, 0, length);
+    }
+  }
+  public static InputStream trackProgress(InputStream inputStream, long totalBytes, @Nullable TaskHandle task) {
+    return task == null ? inputStream : task.track(inputStream, totalBytes);
+  }
+  public static InputStream trackProgress(ReactApplicationContext context, String path, InputStream inputStream, @Nullable TaskHandle task) {
+    if (task == null) return inputStream;
+    return task.track(inputStream, task.hasProgressListeners() ? new FsFile(context, path).length() : -1);
+  }
+  /**
+   * Remove the partial output of a canceled call.
+   */
+  public static void deleteOutput(ReactApplicationContext context, @Nullable Uri uri, @Nullable File file) {
+    try {
+      if (uri != null) DocumentsContract.deleteDocument(context.getContentResolver(), uri);
+      else if (file != null) file.delete();
+    } catch (Exception e) {
+      Log.w("FileSystem", "delete partial output failed: " + e.getMessage());
+    }
+  }
+
   public static OutputStream createOutputStream(ReactApplicationContext context, Uri uri, boolean append) throws IOException {
     DocumentFile pFile = DocumentFile.fromSingleUri(context, uri).getParentFile();
     if (pFile != null && !pFile.exists()) new FsFile(context, pFile).mkdir();
@@ -150,8 +394,12 @@ public class Utils {
 //  }
 
   public static String getMimeTypeFromExt(String ext) {
-    MimeTypeMap mime = MimeTypeMap.getSingleton();
-    return mime.getMimeTypeFromExtension(ext);
+    String mimeType = mimeTypes.get(ext);
+    if (mimeType == null) {
+      mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(ext);
+      mimeTypes.put(ext, mimeType == null ? "" : mimeType);
+    }
+    return mimeType == null || mimeType.isEmpty() ? null : mimeType;
   }
   public static String getMimeTypeFromFileName(String name) {
     return getMimeTypeFromExt(getFileExtension(name));
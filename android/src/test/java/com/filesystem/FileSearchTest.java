@@ -0,0 +1,203 @@
+package com.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class FileSearchTest {
+  private static ArrayList<FileSearch.Match> search(byte[] data, String pattern, boolean regex, boolean caseInsensitive) throws IOException {
+    return FileSearch.search(new ByteArrayInputStream(data), pattern, regex, caseInsensitive, Integer.MAX_VALUE, null);
+  }
+
+  private static ArrayList<FileSearch.Match> search(String text, String pattern, boolean regex, boolean caseInsensitive) throws IOException {
+    return search(text.getBytes(StandardCharsets.UTF_8), pattern, regex, caseInsensitive);
+  }
+
+  // non overlapping matches found by a plain scan
+  private static ArrayList<Long> findAll(byte[] data, byte[] needle) {
+    ArrayList<Long> offsets = new ArrayList<>();
+    for (int i = 0; i + needle.length <= data.length; ) {
+      if (Arrays.equals(Arrays.copyOfRange(data, i, i + needle.length), needle)) {
+        offsets.add((long) i);
+        i += needle.length;
+      } else i++;
+    }
+    return offsets;
+  }
+
+  private static long countLines(byte[] data, long offset) {
+    long line = 0;
+    for (int i = 0; i < offset; i++) if (data[i] == '\n') line++;
+    return line;
+  }
+
+  // a file of lines of filler with the needle at the given offsets
+  private static byte[] buildData(int size, byte[] needle, int... offsets) {
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) data[i] = (byte) (i % 61 == 60 ? '\n' : 'a' + i % 7);
+    for (int offset : offsets) System.arraycopy(needle, 0, data, offset, needle.length);
+    return data;
+  }
+
+  private static void assertMatches(byte[] data, byte[] needle, ArrayList<FileSearch.Match> matches) {
+    ArrayList<Long> expected = findAll(data, needle);
+    assertEquals(expected.size(), matches.size());
+    for (int i = 0; i < expected.size(); i++) {
+      FileSearch.Match match = matches.get(i);
+      assertEquals("match " + i, (long) expected.get(i), match.offset);
+      assertEquals("match " + i, needle.length, match.length);
+      assertEquals("match " + i, countLines(data, match.offset), match.line);
+    }
+  }
+
+  @Test
+  public void literalMatchesAcrossChunks() throws IOException {
+    byte[] needle = "needle".getBytes(StandardCharsets.US_ASCII);
+    // the buffer of the literal search holds a chunk, the pattern and the snippet context on both sides
+    int buffer = FileSearch.CHUNK_SIZE + needle.length + FileSearch.SNIPPET_CONTEXT * 2;
+    int[] offsets = {
+      0,
+      buffer - FileSearch.SNIPPET_CONTEXT - needle.length - 10,
+      buffer - FileSearch.SNIPPET_CONTEXT - 3,
+      buffer - needle.length - 8,
+      buffer - 3,
+      buffer + 5,
+      2 * buffer - 2,
+      3 * FileSearch.CHUNK_SIZE - needle.length,
+    };
+    byte[] data = buildData(3 * FileSearch.CHUNK_SIZE, needle, offsets);
+    ArrayList<FileSearch.Match> matches = search(data, "needle", false, false);
+    assertEquals(offsets.length, matches.size());
+    assertMatches(data, needle, matches);
+
+    // streams that return few bytes per read refill the buffer at other boundaries
+    for (int step : new int[] {1, 100, FileSearch.CHUNK_SIZE - 1}) {
+      matches = FileSearch.search(new PartialInputStream(data, step), "needle", false, false, Integer.MAX_VALUE, null);
+      assertMatches(data, needle, matches);
+    }
+  }
+
+  @Test
+  public void literalMatchesDoNotOverlap() throws IOException {
+    ArrayList<FileSearch.Match> matches = search("aaaaa", "aa", false, false);
+    assertEquals(2, matches.size());
+    assertEquals(0, matches.get(0).offset);
+    assertEquals(2, matches.get(1).offset);
+  }
+
+  @Test
+  public void literalIgnoresAsciiCase() throws IOException {
+    ArrayList<FileSearch.Match> matches = search("Needle NEEDLE nEeDlE noodle", "neeDLE", false, true);
+    assertEquals(3, matches.size());
+    assertEquals(7, matches.get(1).offset);
+    assertEquals(0, search("NEEDLE", "needle", false, false).size());
+  }
+
+  @Test
+  public void maxMatchesStopsTheSearch() throws IOException {
+    ArrayList<FileSearch.Match> matches = FileSearch.search(
+      new ByteArrayInputStream("x x x x".getBytes(StandardCharsets.US_ASCII)), "x", false, false, 2, null);
+    assertEquals(2, matches.size());
+    assertEquals(0, FileSearch.search(new ByteArrayInputStream(new byte[0]), "x", false, false, 2, null).size());
+    assertEquals(0, search("abc", "", false, false).size());
+  }
+
+  @Test
+  public void snippetIsTheLineWithoutCarriageReturn() throws IOException {
+    String text = "first line\r\nfoo bar\r\nlast\r\n";
+    for (boolean regex : new boolean[] {false, true}) {
+      ArrayList<FileSearch.Match> matches = search(text, "bar", regex, false);
+      assertEquals(1, matches.size());
+      assertEquals(1, matches.get(0).line);
+      assertEquals(text.indexOf("bar"), matches.get(0).offset);
+      assertEquals("foo bar", matches.get(0).snippet);
+
+      matches = search(text, "last", regex, false);
+      assertEquals(2, matches.get(0).line);
+      assertEquals("last", matches.get(0).snippet);
+    }
+  }
+
+  @Test
+  public void snippetIsCutToTheContext() throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 300; i++) line.append('a');
+    line.insert(150, "needle");
+    String text = line + "\r\n";
+    for (boolean regex : new boolean[] {false, true}) {
+      FileSearch.Match match = search(text, "needle", regex, false).get(0);
+      assertEquals(FileSearch.SNIPPET_CONTEXT * 2 + "needle".length(), match.snippet.length());
+      assertEquals(150 - FileSearch.SNIPPET_CONTEXT, text.indexOf(match.snippet));
+    }
+  }
+
+  @Test
+  public void snippetDoesNotCutCharacters() throws IOException {
+    StringBuilder text = new StringBuilder();
+    // two byte characters put the context edges inside a character
+    for (int i = 0; i < 100; i++) text.append('é');
+    text.append("needle");
+    for (int i = 0; i < 100; i++) text.append('é');
+    FileSearch.Match match = search(text.toString(), "needle", false, false).get(0);
+    assertEquals(200, match.offset);
+    assertFalse(match.snippet.contains("�"));
+    assertEquals(true, text.toString().contains(match.snippet));
+  }
+
+  @Test
+  public void regexOffsetsAreInBytes() throws IOException {
+    String text = "héllo wörld\n€ 12 and 345\n";
+    ArrayList<FileSearch.Match> matches = search(text, "[0-9]+", true, false);
+    assertEquals(2, matches.size());
+    byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    assertEquals(findAll(data, "12".getBytes(StandardCharsets.UTF_8)).get(0), Long.valueOf(matches.get(0).offset));
+    assertEquals(2, matches.get(0).length);
+    assertEquals(1, matches.get(0).line);
+    assertEquals(findAll(data, "345".getBytes(StandardCharsets.UTF_8)).get(0), Long.valueOf(matches.get(1).offset));
+
+    // a non ASCII pattern ignoring case goes through the regex path
+    matches = search(text, "WÖRLD", false, true);
+    assertEquals(1, matches.size());
+    assertEquals(7, matches.get(0).offset);
+    assertEquals(6, matches.get(0).length);
+  }
+
+  @Test
+  public void regexMatchesLinesAcrossChunks() throws IOException {
+    byte[] needle = "needle".getBytes(StandardCharsets.US_ASCII);
+    int[] offsets = {FileSearch.CHUNK_SIZE - 3, 2 * FileSearch.CHUNK_SIZE - needle.length, 2 * FileSearch.CHUNK_SIZE + 1};
+    byte[] data = buildData(3 * FileSearch.CHUNK_SIZE, needle, offsets);
+    assertMatches(data, needle, search(data, "ne+dle", true, false));
+  }
+
+  private static class PartialInputStream extends InputStream {
+    private final byte[] data;
+    private final int step;
+    private int position = 0;
+    PartialInputStream(byte[] data, int step) {
+      this.data = data;
+      this.step = step;
+    }
+    @Override
+    public int read() {
+      return position < data.length ? data[position++] & 0xff : -1;
+    }
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) return 0;
+      if (position == data.length) return -1;
+      int count = Math.min(Math.min(len, step), data.length - position);
+      System.arraycopy(data, position, b, off, count);
+      position += count;
+      return count;
+    }
+  }
+}
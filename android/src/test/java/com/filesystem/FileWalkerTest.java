@@ -0,0 +1,56 @@
+package com.filesystem;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+public class FileWalkerTest {
+  private static void assertGlob(String glob, String[] matching, String[] notMatching) {
+    Pattern pattern = FileWalker.compileGlob(glob);
+    for (String name : matching) assertTrue(glob + " should match " + name, pattern.matcher(name).matches());
+    for (String name : notMatching) assertFalse(glob + " should not match " + name, pattern.matcher(name).matches());
+  }
+
+  @Test
+  public void starDoesNotCrossSlash() {
+    assertGlob("*.mp3", new String[] {"a.mp3", ".mp3", "a b.mp3"}, new String[] {"a.mp4", "dir/a.mp3", "a.mp3.bak"});
+    assertGlob("a?c", new String[] {"abc", "a.c"}, new String[] {"ac", "abbc", "a/c"});
+  }
+
+  @Test
+  public void doubleStarCrossesSlash() {
+    assertGlob("**.mp3", new String[] {"a.mp3", "dir/sub/a.mp3"}, new String[] {"a.mp4"});
+    assertGlob("**/*.mp3", new String[] {"a.mp3", "dir/a.mp3", "dir/sub/a.mp3"}, new String[] {"dir/a.mp4"});
+    assertGlob("music/**/a", new String[] {"music/a", "music/x/y/a"}, new String[] {"musica", "other/a"});
+  }
+
+  @Test
+  public void sets() {
+    assertGlob("[abc].txt", new String[] {"a.txt", "c.txt"}, new String[] {"d.txt", "ab.txt"});
+    assertGlob("[a-c]x", new String[] {"bx"}, new String[] {"dx"});
+    assertGlob("[!a-c]x", new String[] {"dx", "Ax"}, new String[] {"ax", "cx"});
+    // a ']' right after the bracket is part of the set, regex syntax in a set is literal
+    assertGlob("[]a]", new String[] {"]", "a"}, new String[] {"b"});
+    assertGlob("[^&]", new String[] {"^", "&"}, new String[] {"a"});
+    assertGlob("[abc", new String[] {"[abc"}, new String[] {"a"});
+  }
+
+  @Test
+  public void groups() {
+    assertGlob("*.{mp3,flac}", new String[] {"a.mp3", "a.flac"}, new String[] {"a.ogg", "a.{mp3,flac}"});
+    assertGlob("{a,b{c,d}}", new String[] {"a", "bc", "bd"}, new String[] {"b", "ab"});
+    assertGlob("a,b}", new String[] {"a,b}"}, new String[] {"a"});
+    assertThrows(IllegalArgumentException.class, () -> FileWalker.compileGlob("{a,b"));
+  }
+
+  @Test
+  public void regexCharactersAreLiteral() {
+    assertGlob("a.b+c(d)|e^$", new String[] {"a.b+c(d)|e^$"}, new String[] {"axb+c(d)|e^$", "abbc"});
+    assertGlob("\\*\\?\\[x]", new String[] {"*?[x]"}, new String[] {"a?[x]", "*?x"});
+    assertGlob("a\\", new String[] {"a\\"}, new String[] {"a"});
+  }
+}
@@ -0,0 +1,106 @@
+package com.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Time and allocation of readFile, the 1 KB copy loop readFile used before against Utils.readFully and
+ * Utils.readBase64. Runs on the desktop JVM of the unit tests, so the numbers compare the two paths and are not
+ * device numbers; java.util.Base64 stands in for android.util.Base64.
+ * Skipped unless FILESYSTEM_BENCHMARK is set, e.g.
+ * `FILESYSTEM_BENCHMARK=64 ./gradlew testDebugUnitTest --tests com.filesystem.ReadBenchmark -i`
+ * reads a 64 MB file, the value is the size in MB.
+ */
+public class ReadBenchmark {
+  private static final int ROUNDS = 5;
+
+  private interface Read {
+    String read(File file) throws IOException;
+  }
+
+  private static String readBefore(File file, boolean base64) throws IOException {
+    try (InputStream inputStream = new FileInputStream(file);
+         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
+      byte[] buffer = new byte[1024];
+      int bytesRead;
+      while ((bytesRead = inputStream.read(buffer)) != -1) {
+        byteArrayOutputStream.write(buffer, 0, bytesRead);
+      }
+      return base64
+        ? new String(Base64.getEncoder().encode(byteArrayOutputStream.toByteArray()), StandardCharsets.UTF_8)
+        : new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String readAfter(File file, boolean base64) throws IOException {
+    try (InputStream inputStream = new FileInputStream(file)) {
+      if (base64) return Utils.readBase64(inputStream, file.length());
+      ByteBuffer data = Utils.readFully(inputStream, file.length());
+      return new String(data.array(), 0, data.limit(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  private static void measure(String name, File file, Read read) throws IOException {
+    read.read(file); // warm up
+    long bestTime = Long.MAX_VALUE;
+    long allocated = 0;
+    for (int i = 0; i < ROUNDS; i++) {
+      System.gc();
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      read.read(file);
+      bestTime = Math.min(bestTime, System.nanoTime() - start);
+      allocated = allocatedBytes() - allocatedBefore;
+    }
+    System.out.println(String.format("%-12s %6d ms %6d MB allocated", name, bestTime / 1_000_000, allocated >> 20));
+  }
+
+  @Test
+  public void readFile() throws IOException {
+    String megabytes = System.getenv("FILESYSTEM_BENCHMARK");
+    assumeTrue(megabytes != null);
+    int size = Integer.parseInt(megabytes) << 20;
+    File file = File.createTempFile("bench", ".bin");
+    try {
+      // ASCII, the utf8 decode has the same work in both paths
+      byte[] data = new byte[size];
+      Random random = new Random(1);
+      for (int i = 0; i < size; i++) data[i] = (byte) ('a' + random.nextInt(26));
+      try (FileOutputStream outputStream = new FileOutputStream(file)) {
+        outputStream.write(data);
+      }
+      data = null;
+      assertEquals(readBefore(file, true), readAfter(file, true));
+
+      measure("utf8 before", file, (File f) -> readBefore(f, false));
+      measure("utf8 after", file, (File f) -> readAfter(f, false));
+      measure("base64 before", file, (File f) -> readBefore(f, true));
+      measure("base64 after", file, (File f) -> readAfter(f, true));
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.filesystem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+public class UtilsReadTest {
+  private static final int[] SIZES = {
+    0, 1, 2, 3, 4, 5, 6, 7, 1024,
+    Utils.READ_CHUNK_SIZE - 1, Utils.READ_CHUNK_SIZE, Utils.READ_CHUNK_SIZE + 1, Utils.READ_CHUNK_SIZE + 2,
+    3 * Utils.READ_CHUNK_SIZE + 1,
+  };
+
+  private static byte[] randomBytes(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+
+  // returns at most `step` bytes per read, like a pipe or a slow provider
+  private static class PartialInputStream extends InputStream {
+    private final byte[] data;
+    private final int step;
+    private int position = 0;
+    PartialInputStream(byte[] data, int step) {
+      this.data = data;
+      this.step = step;
+    }
+    @Override
+    public int read() {
+      return position < data.length ? data[position++] & 0xff : -1;
+    }
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) return 0;
+      if (position == data.length) return -1;
+      int count = Math.min(Math.min(len, step), data.length - position);
+      System.arraycopy(data, position, b, off, count);
+      position += count;
+      return count;
+    }
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    return Arrays.copyOfRange(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.arrayOffset() + buffer.limit());
+  }
+
+  @Test
+  public void readFullyWithExactSizeHint() throws IOException {
+    for (int size : SIZES) {
+      byte[] data = randomBytes(size);
+      ByteBuffer buffer = Utils.readFully(new ByteArrayInputStream(data), size);
+      assertArrayEquals("size " + size, data, toArray(buffer));
+      if (size > 0) assertEquals("size " + size, size, buffer.array().length);
+    }
+  }
+
+  @Test
+  public void readFullyWithWrongSizeHint() throws IOException {
+    for (int size : SIZES) {
+      byte[] data = randomBytes(size);
+      // the file grew or shrank after its length was read
+      assertArrayEquals("size " + size, data, toArray(Utils.readFully(new ByteArrayInputStream(data), size / 2)));
+      assertArrayEquals("size " + size, data, toArray(Utils.readFully(new ByteArrayInputStream(data), size + 100)));
+      assertArrayEquals("size " + size, data, toArray(Utils.readFully(new ByteArrayInputStream(data), -1)));
+    }
+  }
+
+  @Test
+  public void readFullyWithPartialReads() throws IOException {
+    for (int step : new int[] {1, 2, 7, 4096}) {
+      for (int size : new int[] {0, 1, 5, 10_000, Utils.READ_CHUNK_SIZE + 1}) {
+        byte[] data = randomBytes(size);
+        assertArrayEquals("size " + size + " step " + step, data, toArray(Utils.readFully(new PartialInputStream(data, step), size)));
+        assertArrayEquals("size " + size + " step " + step, data, toArray(Utils.readFully(new PartialInputStream(data, step), -1)));
+      }
+    }
+  }
+
+  @Test
+  public void readBase64MatchesEncoder() throws IOException {
+    for (int size : SIZES) {
+      byte[] data = randomBytes(size);
+      String expected = Base64.getEncoder().encodeToString(data);
+      assertEquals("size " + size, expected, Utils.readBase64(new ByteArrayInputStream(data), size));
+      assertEquals("size " + size, expected, Utils.readBase64(new ByteArrayInputStream(data), -1));
+      assertEquals("size " + size, expected, Utils.readBase64(new ByteArrayInputStream(data), size / 2));
+    }
+  }
+
+  @Test
+  public void readBase64WithPartialReads() throws IOException {
+    // reads that are not a multiple of 3 leave bytes pending between chunks
+    for (int step : new int[] {1, 2, 4, 5, 1000, Utils.READ_CHUNK_SIZE - 1}) {
+      for (int size : new int[] {0, 1, 2, 3, 4, 10, 10_001, Utils.READ_CHUNK_SIZE + 2, 2 * Utils.READ_CHUNK_SIZE + 1}) {
+        byte[] data = randomBytes(size);
+        String expected = Base64.getEncoder().encodeToString(data);
+        assertEquals("size " + size + " step " + step, expected, Utils.readBase64(new PartialInputStream(data, step), size));
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.filesystem;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class UtilsUtf8Test {
+  private static int completeLength(String text, int cut) {
+    byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    return Utils.getUtf8CompleteLength(data, cut);
+  }
+
+  @Test
+  public void keepsCompleteText() {
+    assertEquals(0, Utils.getUtf8CompleteLength(new byte[0], 0));
+    assertEquals(3, completeLength("abc", 3));
+    // é is 2 bytes, € 3 and 😀 4
+    assertEquals(3, completeLength("aé", 3));
+    assertEquals(4, completeLength("a€", 4));
+    assertEquals(5, completeLength("a😀", 5));
+  }
+
+  @Test
+  public void dropsCutCharacter() {
+    assertEquals(1, completeLength("aé", 2));
+    assertEquals(1, completeLength("a€", 2));
+    assertEquals(1, completeLength("a€", 3));
+    assertEquals(1, completeLength("a😀", 2));
+    assertEquals(1, completeLength("a😀", 3));
+    assertEquals(1, completeLength("a😀", 4));
+    assertEquals(0, completeLength("😀", 3));
+  }
+
+  @Test
+  public void everyCutOfMixedText() {
+    String text = "aé€😀b😀€éc";
+    byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    for (int cut = 0; cut <= data.length; cut++) {
+      // the end of the last whole character before the cut
+      int expected = 0;
+      for (int i = 0; i < text.length(); i = text.offsetByCodePoints(i, 1)) {
+        int end = text.substring(0, text.offsetByCodePoints(i, 1)).getBytes(StandardCharsets.UTF_8).length;
+        if (end <= cut) expected = end;
+      }
+      assertEquals("cut " + cut, expected, Utils.getUtf8CompleteLength(data, cut));
+    }
+  }
+
+  @Test
+  public void invalidBytesAreKept() {
+    // stray continuation bytes are not a cut character, decoding replaces them
+    assertEquals(4, Utils.getUtf8CompleteLength(new byte[] {'a', (byte) 0x80, (byte) 0x80, (byte) 0x80}, 4));
+    assertEquals(1, Utils.getUtf8CompleteLength(new byte[] {(byte) 0x80}, 1));
+  }
+}
@@ -0,0 +1,225 @@
+#include "react-native-file-system.h"
+
+#include <atomic>
+#include <cstring>
+#include <mutex>
+#include <unordered_map>
+#include <utility>
+#include <vector>
+
+namespace filesystem {
+
+using namespace facebook;
+
+namespace {
+
+struct Request {
+  std::shared_ptr<jsi::Function> resolve;
+  std::shared_ptr<jsi::Function> reject;
+  // bytes of a write, copied out of the JS buffer so JS can reuse it right away
+  std::vector<uint8_t> data;
+};
+
+// State of one JS runtime, only touched on its JS thread except `alive`.
+struct Binding {
+  jsi::Runtime *rt;
+  std::shared_ptr<Platform> platform;
+  std::unordered_map<int64_t, Request> *requests = new std::unordered_map<int64_t, Request>();
+  std::atomic<bool> alive{true};
+
+  Binding(jsi::Runtime &rt, std::shared_ptr<Platform> platform) : rt(&rt), platform(std::move(platform)) {}
+  ~Binding() {
+    // pending callbacks of a torn down runtime can not be released safely, they are leaked
+    if (alive) delete requests;
+  }
+};
+
+std::mutex gBindingMutex;
+std::shared_ptr<Binding> gBinding;
+std::atomic<int64_t> gNextRequestId{1};
+
+// Marks the binding dead when its runtime is torn down, pending results are dropped after that.
+class RuntimeGuard : public jsi::HostObject {
+ public:
+  explicit RuntimeGuard(std::shared_ptr<Binding> binding) : binding_(std::move(binding)) {}
+  ~RuntimeGuard() override {
+    binding_->alive = false;
+    std::lock_guard<std::mutex> lock(gBindingMutex);
+    if (gBinding == binding_) gBinding.reset();
+  }
+
+ private:
+  std::shared_ptr<Binding> binding_;
+};
+
+jsi::ArrayBuffer createArrayBuffer(jsi::Runtime &rt, size_t size) {
+  jsi::Function constructor = rt.global().getPropertyAsFunction(rt, "ArrayBuffer");
+  return constructor.callAsConstructor(rt, static_cast<double>(size)).getObject(rt).getArrayBuffer(rt);
+}
+
+jsi::Value createError(jsi::Runtime &rt, const std::string &message) {
+  jsi::Function constructor = rt.global().getPropertyAsFunction(rt, "Error");
+  return constructor.callAsConstructor(rt, jsi::String::createFromUtf8(rt, message));
+}
+
+void settle(Binding &binding, int64_t requestId, Completion &completion) {
+  auto it = binding.requests->find(requestId);
+  if (it == binding.requests->end()) {
+    if (completion.release) completion.release();
+    return;
+  }
+  Request request = std::move(it->second);
+  binding.requests->erase(it);
+  jsi::Runtime &rt = *binding.rt;
+  try {
+    if (!completion.error.empty()) {
+      request.reject->call(rt, createError(rt, completion.error));
+    } else if (completion.hasData) {
+      jsi::ArrayBuffer buffer = createArrayBuffer(rt, completion.size);
+      if (completion.size > 0) std::memcpy(buffer.data(rt), completion.data, completion.size);
+      if (completion.release) completion.release();
+      completion.release = nullptr;
+      request.resolve->call(rt, jsi::Value(std::move(buffer)));
+    } else {
+      request.resolve->call(rt, completion.value);
+    }
+  } catch (const std::exception &) {
+    // e.g. allocating the ArrayBuffer failed, the promise is still settled
+    if (completion.release) completion.release();
+    try {
+      request.reject->call(rt, createError(rt, "settle request failed"));
+    } catch (const std::exception &) {}
+  }
+}
+
+std::string getPriority(jsi::Runtime &rt, const jsi::Value *args, size_t count, size_t index) {
+  return count > index && args[index].isString() ? args[index].getString(rt).utf8(rt) : "";
+}
+
+// new Promise(executor), `start` registers the request and hands it to the platform
+template <typename Start>
+jsi::Value createPromise(jsi::Runtime &rt, std::shared_ptr<Binding> binding, Start start) {
+  jsi::Function promise = rt.global().getPropertyAsFunction(rt, "Promise");
+  jsi::Function executor = jsi::Function::createFromHostFunction(
+    rt,
+    jsi::PropNameID::forAscii(rt, "executor"),
+    2,
+    [binding, start](jsi::Runtime &rt, const jsi::Value &, const jsi::Value *args, size_t) -> jsi::Value {
+      int64_t requestId = gNextRequestId++;
+      Request &request = (*binding->requests)[requestId];
+      request.resolve = std::make_shared<jsi::Function>(args[0].getObject(rt).getFunction(rt));
+      request.reject = std::make_shared<jsi::Function>(args[1].getObject(rt).getFunction(rt));
+      try {
+        start(request, requestId);
+      } catch (const std::exception &e) {
+        // thrown by the executor, the promise rejects with it
+        binding->requests->erase(requestId);
+        throw jsi::JSError(rt, e.what());
+      }
+      return jsi::Value::undefined();
+    });
+  return promise.callAsConstructor(rt, executor);
+}
+
+// readFile(path, offset?, length?, priority?): Promise<ArrayBuffer>
+jsi::Value readFile(jsi::Runtime &rt, std::shared_ptr<Binding> binding, const jsi::Value *args, size_t count) {
+  if (count < 1 || !args[0].isString()) throw jsi::JSError(rt, "readFile: path must be a string");
+  std::string path = args[0].getString(rt).utf8(rt);
+  double offset = count > 1 && args[1].isNumber() ? args[1].getNumber() : 0;
+  double length = count > 2 && args[2].isNumber() ? args[2].getNumber() : -1;
+  if (offset < 0) offset = 0;
+  std::string priority = getPriority(rt, args, count, 3);
+  return createPromise(rt, binding, [binding, path, offset, length, priority](Request &, int64_t requestId) {
+    binding->platform->readFile(path, offset, length, priority, requestId);
+  });
+}
+
+// writeFile(path, data: ArrayBuffer | ArrayBufferView, append?, priority?): Promise<number> of the bytes written
+jsi::Value writeFile(jsi::Runtime &rt, std::shared_ptr<Binding> binding, const jsi::Value *args, size_t count) {
+  if (count < 2 || !args[0].isString() || !args[1].isObject()) {
+    throw jsi::JSError(rt, "writeFile: expected a path and an ArrayBuffer");
+  }
+  std::string path = args[0].getString(rt).utf8(rt);
+  bool append = count > 2 && args[2].isBool() && args[2].getBool();
+  std::string priority = getPriority(rt, args, count, 3);
+
+  jsi::Object data = args[1].getObject(rt);
+  size_t byteOffset = 0;
+  size_t byteLength;
+  if (data.isArrayBuffer(rt)) {
+    byteLength = data.getArrayBuffer(rt).size(rt);
+  } else {
+    jsi::Value backing = data.getProperty(rt, "buffer");
+    if (!backing.isObject() || !backing.getObject(rt).isArrayBuffer(rt)) {
+      throw jsi::JSError(rt, "writeFile: data must be an ArrayBuffer or a typed array");
+    }
+    byteOffset = static_cast<size_t>(data.getProperty(rt, "byteOffset").getNumber());
+    byteLength = static_cast<size_t>(data.getProperty(rt, "byteLength").getNumber());
+    data = backing.getObject(rt);
+  }
+  jsi::ArrayBuffer buffer = data.getArrayBuffer(rt);
+  const uint8_t *bytes = buffer.data(rt) + byteOffset;
+  std::vector<uint8_t> copy(bytes, bytes + byteLength);
+
+  auto shared = std::make_shared<std::vector<uint8_t>>(std::move(copy));
+  return createPromise(rt, binding, [binding, path, append, priority, shared](Request &request, int64_t requestId) {
+    request.data = std::move(*shared);
+    binding->platform->writeFile(path, request.data.data(), request.data.size(), append, priority, requestId);
+  });
+}
+
+template <typename Fn>
+jsi::Function createFunction(jsi::Runtime &rt, const char *name, unsigned int paramCount, std::shared_ptr<Binding> binding, Fn fn) {
+  return jsi::Function::createFromHostFunction(
+    rt,
+    jsi::PropNameID::forAscii(rt, name),
+    paramCount,
+    [binding, fn, name](jsi::Runtime &rt, const jsi::Value &, const jsi::Value *args, size_t count) -> jsi::Value {
+      try {
+        return fn(rt, binding, args, count);
+      } catch (const jsi::JSError &) {
+        throw;
+      } catch (const std::exception &e) {
+        throw jsi::JSError(rt, std::string(name) + ": " + e.what());
+      }
+    });
+}
+
+} // namespace
+
+void install(jsi::Runtime &rt, std::shared_ptr<Platform> platform) {
+  auto binding = std::make_shared<Binding>(rt, std::move(platform));
+  {
+    // a reload installs into the new runtime, results of the old one are dropped
+    std::lock_guard<std::mutex> lock(gBindingMutex);
+    if (gBinding != nullptr) gBinding->alive = false;
+    gBinding = binding;
+  }
+  jsi::Object binary(rt);
+  binary.setProperty(rt, "readFile", createFunction(rt, "readFile", 4, binding, readFile));
+  binary.setProperty(rt, "writeFile", createFunction(rt, "writeFile", 4, binding, writeFile));
+  binary.setProperty(rt, "__guard", jsi::Object::createFromHostObject(rt, std::make_shared<RuntimeGuard>(binding)));
+  rt.global().setProperty(rt, "__FileSystemBinary", std::move(binary));
+}
+
+void complete(int64_t requestId, Completion completion) {
+  std::shared_ptr<Binding> binding;
+  {
+    std::lock_guard<std::mutex> lock(gBindingMutex);
+    binding = gBinding;
+  }
+  if (binding == nullptr || !binding->alive) {
+    if (completion.release) completion.release();
+    return;
+  }
+  auto shared = std::make_shared<Completion>(std::move(completion));
+  binding->platform->invokeOnJs([binding, requestId, shared] {
+    if (!binding->alive) {
+      if (shared->release) shared->release();
+      return;
+    }
+    settle(*binding, requestId, *shared);
+  });
+}
+
+} // namespace filesystem
@@ -0,0 +1,44 @@
+#pragma once
+
+#include <jsi/jsi.h>
+
+#include <cstdint>
+#include <functional>
+#include <memory>
+#include <string>
+
+namespace filesystem {
+
+// Result of a request started by the platform, the data is copied into an ArrayBuffer on the JS thread.
+struct Completion {
+  // empty on success
+  std::string error;
+  // resolved when there is no data, e.g. the bytes written
+  double value = 0;
+  bool hasData = false;
+  const uint8_t *data = nullptr;
+  size_t size = 0;
+  // frees `data`, runs on the JS thread once the data is copied
+  std::function<void()> release;
+};
+
+// The file I/O runs off the JS thread on the platform side, ordered with the other calls on the same path.
+// Each request ends with exactly one complete(requestId, ...), a request that can not be started throws instead.
+class Platform {
+ public:
+  virtual ~Platform() = default;
+  // length < 0 reads to the end of the file
+  virtual void readFile(const std::string &path, double offset, double length, const std::string &priority, int64_t requestId) = 0;
+  // `data` stays valid until the request is completed
+  virtual void writeFile(const std::string &path, const uint8_t *data, size_t size, bool append, const std::string &priority, int64_t requestId) = 0;
+  // run on the JS thread
+  virtual void invokeOnJs(std::function<void()> fn) = 0;
+};
+
+// Install global.__FileSystemBinary with readFile and writeFile returning promises of ArrayBuffers.
+void install(facebook::jsi::Runtime &rt, std::shared_ptr<Platform> platform);
+
+// Settle the promise of a request, can be called from any thread.
+void complete(int64_t requestId, Completion completion);
+
+} // namespace filesystem
@@ -0,0 +1,41 @@
+// Base64 codec for the binary fallback when the JSI binding is not installed
+const CHARS = 'ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/'
+const LOOKUP = new Uint8Array(256)
+for (let i = 0; i < CHARS.length; i++) LOOKUP[CHARS.charCodeAt(i)] = i
+
+export const decodeBase64 = (data: string): ArrayBuffer => {
+  let length = data.length
+  while (length > 0 && data[length - 1] === '=') length--
+  const bytes = new Uint8Array((length * 3) >> 2)
+  let p = 0
+  for (let i = 0; i < length; i += 4) {
+    const a = LOOKUP[data.charCodeAt(i)]!
+    const b = LOOKUP[data.charCodeAt(i + 1)]!
+    const c = LOOKUP[data.charCodeAt(i + 2)]!
+    const d = LOOKUP[data.charCodeAt(i + 3)]!
+    bytes[p++] = (a << 2) | (b >> 4)
+    if (p < bytes.length) bytes[p++] = ((b & 15) << 4) | (c >> 2)
+    if (p < bytes.length) bytes[p++] = ((c & 3) << 6) | d
+  }
+  return bytes.buffer
+}
+
+export const encodeBase64 = (bytes: Uint8Array): string => {
+  const parts: string[] = []
+  const chunkSize = 3 * 4096
+  for (let start = 0; start < bytes.length; start += chunkSize) {
+    const end = Math.min(start + chunkSize, bytes.length)
+    let chunk = ''
+    let i = start
+    for (; i + 2 < end; i += 3) {
+      const n = (bytes[i]! << 16) | (bytes[i + 1]! << 8) | bytes[i + 2]!
+      chunk += CHARS[n >> 18]! + CHARS[(n >> 12) & 63]! + CHARS[(n >> 6) & 63]! + CHARS[n & 63]!
+    }
+    if (i < end) {
+      const n = (bytes[i]! << 16) | (i + 1 < end ? bytes[i + 1]! << 8 : 0)
+      chunk += CHARS[n >> 18]! + CHARS[(n >> 12) & 63]! + (i + 1 < end ? CHARS[(n >> 6) & 63]! : '=') + '='
+    }
+    parts.push(chunk)
+  }
+  return parts.join('')
+}
@@ -1,4 +1,5 @@
-import { NativeModules, Platform } from 'react-native';
+import { NativeEventEmitter, NativeModules, Platform, type EmitterSubscription } from 'react-native';
+import { decodeBase64, encodeBase64 } from './base64';
 
 const LINKING_ERROR =
   `The package 'react-native-file-system' doesn't seem to be linked. Make sure: \n\n` +
@@ -17,6 +18,31 @@ const FileSystemModule = NativeModules.FileSystemModule
       }
     );
 
+interface BinaryBinding {
+  readFile: (path: string, offset?: number, length?: number, priority?: Priority) => Promise<ArrayBuffer>
+  writeFile: (path: string, data: ArrayBuffer | ArrayBufferView, append?: boolean, priority?: Priority) => Promise<number>
+}
+declare global {
+  // eslint-disable-next-line no-var
+  var __FileSystemBinary: BinaryBinding | undefined
+}
+let binaryInstalled: boolean | null = null
+const getBinary = (): BinaryBinding | undefined => {
+  if (binaryInstalled == null) {
+    try {
+      binaryInstalled = FileSystemModule.installBinary() === true
+    } catch {
+      binaryInstalled = false
+    }
+  }
+  return binaryInstalled ? global.__FileSystemBinary : undefined
+}
+
+let eventEmitter: NativeEventEmitter | null = null
+const getEventEmitter = () => {
+  if (!eventEmitter) eventEmitter = new NativeEventEmitter(FileSystemModule)
+  return eventEmitter
+}
 
 export interface FileType {
   /** Document Tree Uri for the file or directory */
@@ -38,6 +64,196 @@ export interface FileType {
 }
 export type Encoding = 'base64' | 'utf8'
 export type HashAlgorithm = 'md5' | 'sha1' | 'sha224' | 'sha256' | 'sha384' | 'sha512'
+/**
+ * Scheduling hint.
+ *
+ * `high`: metadata lane (default of ls, lsStream, stat, exists, mkdir, rename)
+ *
+ * `normal`: io lane (default of readFile, readLines, tail, writeFile, appendFile, unlink, gzipString, unGzipString)
+ *
+ * `low`: bulk lane (default of cp, mv, gzipFile, unGzipFile, hash, search, walk, du)
+ */
+export type Priority = 'high' | 'normal' | 'low'
+export interface TaskOptions {
+  priority?: Priority
+}
+export interface ReadFileOptions extends TaskOptions {
+  /** Byte offset to start reading from */
+  offset?: number
+  /** Number of bytes to read, reads to the end of the file by default */
+  length?: number
+}
+export interface AppendFileOptions extends TaskOptions {
+  /**
+   * Buffer the data in a long-lived stream of the path, the buffer is written when it reaches 64 KB,
+   * every second, on `flush(path)`, and before other calls modify the file.
+   *
+   * The promise resolves once the data is buffered.
+   */
+  buffered?: boolean
+}
+export interface ReadLinesOptions extends TaskOptions {
+  /** First line to read, from 0 */
+  startLine?: number
+  /** Max number of lines, default 100 */
+  count?: number
+}
+export interface WriteFileOptions extends TaskOptions {
+  /**
+   * Write a temp file next to the target and rename it into place, readers never see a partially written file.
+   *
+   * Content uris are written in place.
+   */
+  atomic?: boolean
+  /**
+   * Flush the data to storage before resolving, combine with `atomic` to survive a crash or power loss.
+   *
+   * Each file is synced by its own write, concurrent atomic writes into one directory share the sync of the
+   * directory. Rejects without writing when a content provider does not support it.
+   */
+  durable?: boolean
+}
+export interface WriteFileBinaryOptions extends TaskOptions {
+  /** Append to the file instead of replacing it */
+  append?: boolean
+}
+export interface CancelableTaskOptions extends TaskOptions {
+  /** Cancel the task if it has not finished this many milliseconds after the call */
+  timeout?: number
+}
+/**
+ * A promise of a long running call, it can be canceled by `cancel()` or `FileSystem.cancel(taskId)`.
+ *
+ * A canceled task rejects and its partial output is removed.
+ */
+export interface Task<T> extends Promise<T> {
+  taskId: string
+  cancel: () => Promise<boolean>
+}
+
+export interface LsOptions extends TaskOptions {
+  /** Skip this many entries, paginated entries are sorted by name */
+  offset?: number
+  /** Max number of entries */
+  limit?: number
+}
+export interface LsStreamOptions extends CancelableTaskOptions {
+  /** Entries per chunk, default 500 */
+  chunkSize?: number
+}
+export interface WalkOptions extends CancelableTaskOptions {
+  /**
+   * Match the name against a glob, e.g. `*.{mp3,flac}`.
+   * A glob with a `/` is matched against the path relative to the root, `**` matches across directories.
+   */
+  glob?: string
+  /** Only files of at least this many bytes */
+  minSize?: number
+  /** Depth limit, the children of the root are depth 1 */
+  maxDepth?: number
+  /** Only entries modified after this time, in milliseconds since the epoch */
+  modifiedAfter?: number
+  /** Default `all` */
+  type?: 'file' | 'directory' | 'all'
+  /** Matches per chunk, default 500, pending matches are also sent every 250 ms */
+  chunkSize?: number
+}
+export interface DuOptions extends CancelableTaskOptions {
+  /** Read every directory again instead of trusting the ones unchanged since the last call */
+  refresh?: boolean
+}
+export interface DiskUsage {
+  path: string
+  /** Only set on the children */
+  name?: string
+  isDirectory: boolean
+  /** Bytes of the regular files in the tree */
+  size: number
+  files: number
+  /** Directories in the tree, not counting the tree itself */
+  directories: number
+  /** Entries directly in the path with the totals of their trees, largest first, only set on the root */
+  children?: DiskUsage[]
+}
+export interface SearchOptions extends CancelableTaskOptions {
+  /** Treat the pattern as a Java regular expression, matched per line */
+  regex?: boolean
+  caseInsensitive?: boolean
+  /** Stop after this many matches, default 1000 */
+  maxMatches?: number
+}
+export interface SearchMatch {
+  /** Byte offset of the match in the file */
+  offset: number
+  /** Byte length of the match */
+  length: number
+  /** Line of the match, from 0 */
+  line: number
+  /** The match with up to 80 bytes of its line on each side */
+  snippet: string
+}
+
+export interface ProgressEvent {
+  taskId: string
+  /** Bytes of the source processed so far */
+  bytesDone: number
+  /** Size of the source, -1 if unknown */
+  totalBytes: number
+  /** Bytes per second since the task started */
+  throughput: number
+  /** Estimated seconds left, -1 if unknown */
+  eta: number
+}
+
+/**
+ * `r`: read, `w`: truncate and write, `a`: append
+ */
+export type OpenMode = 'r' | 'w' | 'a'
+export type SeekWhence = 'set' | 'cur' | 'end'
+export type BatchOpName = 'ls' | 'readFile' | 'writeFile' | 'appendFile' | 'mkdir' | 'stat' | 'exists' | 'unlink'
+| 'cp' | 'mv' | 'rename' | 'gzipFile' | 'unGzipFile' | 'gzipString' | 'unGzipString' | 'hash'
+export interface BatchOp {
+  op: BatchOpName
+  /** Arguments of the FileSystem method, without the options */
+  args: Array<string | null>
+  priority?: Priority
+}
+export type BatchResult<T = any> = { result: T } | { error: string }
+export interface BatchOptions {
+  /** Max number of operations in flight */
+  parallelism?: number
+}
+
+let taskIndex = 0
+const runTask = <T>(handler: (taskId: string) => Promise<T>): Task<T> => {
+  const taskId = `task_${Date.now()}_${taskIndex++}`
+  const task = handler(taskId) as Task<T>
+  task.taskId = taskId
+  task.cancel = async() => FileSystemModule.cancel(taskId)
+  return task
+}
+
+/**
+ * Run a task that sends its entries as `<name>Chunk` events and ends with a `<name>End` event.
+ */
+const runEntryStreamTask = (name: 'ls' | 'walk', onEntries: (entries: FileType[]) => void, handler: (taskId: string) => Promise<number>): Task<number> => {
+  return runTask(taskId => {
+    const emitter = getEventEmitter()
+    const subscriptions = [
+      emitter.addListener(`${name}Chunk`, (event: { taskId: string, entries: FileType[] }) => {
+        if (event.taskId === taskId) onEntries(event.entries)
+      }),
+      emitter.addListener(`${name}End`, (event: { taskId: string }) => {
+        if (event.taskId === taskId) remove()
+      }),
+    ]
+    const remove = () => {
+      for (const subscription of subscriptions) subscription.remove()
+      subscriptions.length = 0
+    }
+    return handler(taskId).finally(remove)
+  })
+}
 
 export const Dirs: {
   /**
@@ -103,23 +319,61 @@ export const AndroidScoped = {
 export const FileSystem = {
   /**
    * Copy a file.
+   *
+   * Between documents of one provider the copy is done by the provider when it supports it.
    */
-  async cp(source: string, target: string): Promise<void> {
-    return FileSystemModule.cp(source, target)
+  cp(source: string, target: string, options?: CancelableTaskOptions): Task<void> {
+    return runTask(taskId => FileSystemModule.cp(source, target, { ...options, taskId }))
   },
 
   /**
    * Check if a path exists.
    */
-  async exists(path: string): Promise<boolean> {
-    return FileSystemModule.exists(path)
+  async exists(path: string, options?: TaskOptions): Promise<boolean> {
+    return FileSystemModule.exists(path, options ?? null)
   },
 
   /**
    * List files in a directory.
+   *
+   * Pass `offset` and `limit` to read one page, pages are sorted by name so they are stable between calls.
+   * The directory is listed once per pass, the pages after the first are cut from the listing of the first page
+   * while the directory is unchanged and the next page is requested within 30 seconds.
+   */
+  async ls(path: string, options?: LsOptions): Promise<FileType[]> {
+    return FileSystemModule.ls(path, options ?? null)
+  },
+
+  /**
+   * List files in a directory in chunks, `onEntries` gets each chunk as soon as it is built,
+   * chunks are sent while the directory is still being read.
+   *
+   * Resolves the number of entries after the last chunk.
+   */
+  lsStream(path: string, onEntries: (entries: FileType[]) => void, options?: LsStreamOptions): Task<number> {
+    return runEntryStreamTask('ls', onEntries, taskId => FileSystemModule.lsStream(path, { ...options, taskId }))
+  },
+
+  /**
+   * Find the files under a directory, subdirectories are listed in parallel in native code.
+   * `onEntries` gets the matches in chunks while the walk runs, their order is not defined.
+   *
+   * Symbolic links are not followed, unreadable subdirectories are skipped.
+   * Resolves the number of matches after the last chunk.
+   */
+  walk(root: string, onEntries: (entries: FileType[]) => void, options?: WalkOptions): Task<number> {
+    return runEntryStreamTask('walk', onEntries, taskId => FileSystemModule.walk(root, { ...options, taskId }))
+  },
+
+  /**
+   * Total size of a directory tree with a breakdown per child, subdirectories are summed in parallel in native code.
+   *
+   * The files of each directory are cached while its modified time is unchanged, so a repeated call on an unchanged
+   * tree only checks the directories. A file changed in place (e.g. appended to) does not change the modified time
+   * of its directory, pass `refresh` when such changes must be counted.
    */
-  async ls(path: string): Promise<FileType[]> {
-    return FileSystemModule.ls(path)
+  du(path: string, options?: DuOptions): Task<DiskUsage> {
+    return runTask(taskId => FileSystemModule.du(path, { ...options, taskId }))
   },
 
   /**
@@ -127,43 +381,84 @@ export const FileSystem = {
    *
    * Returns path of the created directory.
    */
-  async mkdir(path: string): Promise<FileType> {
-    return FileSystemModule.mkdir(path)
+  async mkdir(path: string, options?: TaskOptions): Promise<FileType> {
+    return FileSystemModule.mkdir(path, options ?? null)
   },
 
   /**
    * move a file.
+   *
+   * Between documents of one provider the move is done by the provider when it supports it,
+   * e.g. a move within one document tree does not copy the content.
    */
-  async mv(source: string, target: string): Promise<boolean> {
-    return FileSystemModule.mv(source, target)
+  mv(source: string, target: string, options?: CancelableTaskOptions): Task<boolean> {
+    return runTask(taskId => FileSystemModule.mv(source, target, { ...options, taskId }))
   },
 
   /**
    * rename a file.
    */
-  async rename(source: string, name: string): Promise<boolean> {
-    return FileSystemModule.rename(source, name)
+  async rename(source: string, name: string, options?: TaskOptions): Promise<boolean> {
+    return FileSystemModule.rename(source, name, options ?? null)
   },
 
   /**
    * Read the content of a file.
+   *
+   * Pass `offset` and `length` to read a byte range, only the range is read from storage.
+   * A utf8 range that splits a multi-byte character decodes it as a replacement character.
+   */
+  async readFile(path: string, encoding: Encoding = 'utf8', options?: ReadFileOptions): Promise<string> {
+    return FileSystemModule.readFile(path, encoding, options ?? null)
+  },
+
+  /**
+   * Read the content of a file into an ArrayBuffer.
+   *
+   * With the JSI binding the file is read into the ArrayBuffer without a base64 string,
+   * the read runs off the JS thread on the lane of `priority`, in order with the other calls on the path.
+   * Without JSI (e.g. remote debugging) it falls back to a base64 `readFile`.
+   */
+  async readFileBinary(path: string, options?: ReadFileOptions): Promise<ArrayBuffer> {
+    const binary = getBinary()
+    if (binary) return binary.readFile(path, options?.offset ?? 0, options?.length ?? -1, options?.priority)
+    return decodeBase64(await FileSystemModule.readFile(path, 'base64', options ?? null))
+  },
+
+  /**
+   * Read lines of a text file, only the requested lines are read and sent to JS.
+   *
+   * Line offsets are indexed while reading, later reads of the unchanged file start near the requested line.
+   * Fewer lines are returned at the end of the file.
+   */
+  async readLines(path: string, options?: ReadLinesOptions): Promise<string[]> {
+    return FileSystemModule.readLines(path, options ?? null)
+  },
+
+  /**
+   * Read the last `count` lines of a text file, the file is scanned backward from its end.
    */
-  async readFile(path: string, encoding: Encoding = 'utf8'): Promise<string> {
-    return FileSystemModule.readFile(path, encoding)
+  async tail(path: string, count: number, options?: TaskOptions): Promise<string[]> {
+    return FileSystemModule.tail(path, count, options ?? null)
   },
 
   /**
    * Read file metadata.
    */
-  async stat(path: string): Promise<FileType> {
-    return FileSystemModule.stat(path)
+  async stat(path: string, options?: TaskOptions): Promise<FileType> {
+    return FileSystemModule.stat(path, options ?? null)
   },
 
   /**
-   * Delete a file.
+   * Delete a file, or a directory with everything in it.
+   *
+   * A document directory is deleted by its provider in one call when the provider supports it,
+   * plain directories are deleted in parallel. Symbolic links are deleted, not followed.
+   * Entries that can not be deleted are left in place, the call rejects with their paths after deleting the rest.
+   * A canceled call stops before the next directory.
    */
-  async unlink(path: string): Promise<boolean> {
-    return FileSystemModule.unlink(path)
+  unlink(path: string, options?: CancelableTaskOptions): Task<boolean> {
+    return runTask(taskId => FileSystemModule.unlink(path, { ...options, taskId }))
   },
 
   /**
@@ -171,51 +466,147 @@ export const FileSystem = {
    *
    * Default encoding of `data` is assumed utf8.
    */
-  async writeFile(path: string, data: string, encoding: Encoding = 'utf8'): Promise<void> {
-    return FileSystemModule.writeFile(path, data, encoding)
+  async writeFile(path: string, data: string, encoding: Encoding = 'utf8', options?: WriteFileOptions): Promise<void> {
+    return FileSystemModule.writeFile(path, data, encoding, options ?? null)
+  },
+  /**
+   * Write an ArrayBuffer or a typed array to a file.
+   *
+   * With the JSI binding the bytes are copied out of the buffer without a base64 string, `data` can be reused
+   * right away. The write runs off the JS thread on the lane of `priority`, in order with the other calls on the path.
+   * Without JSI it falls back to a base64 `writeFile` or `appendFile`.
+   */
+  async writeFileBinary(path: string, data: ArrayBuffer | ArrayBufferView, options?: WriteFileBinaryOptions): Promise<void> {
+    const binary = getBinary()
+    if (binary) {
+      await binary.writeFile(path, data, options?.append ?? false, options?.priority)
+      return
+    }
+    const bytes = data instanceof ArrayBuffer ? new Uint8Array(data) : new Uint8Array(data.buffer, data.byteOffset, data.byteLength)
+    const taskOptions = options?.priority ? { priority: options.priority } : null
+    return options?.append
+      ? FileSystemModule.appendFile(path, encodeBase64(bytes), 'base64', taskOptions)
+      : FileSystemModule.writeFile(path, encodeBase64(bytes), 'base64', taskOptions)
   },
   /**
    * Append content to a file.
    *
    * Default encoding of `data` is assumed utf8.
    */
-  async appendFile(path: string, data: string, encoding: Encoding = 'utf8'): Promise<void> {
-    return FileSystemModule.appendFile(path, data, encoding)
+  async appendFile(path: string, data: string, encoding: Encoding = 'utf8', options?: AppendFileOptions): Promise<void> {
+    return FileSystemModule.appendFile(path, data, encoding, options ?? null)
+  },
+  /**
+   * Write the data buffered by `appendFile(path, data, encoding, { buffered: true })` to storage.
+   */
+  async flush(path: string): Promise<void> {
+    return FileSystemModule.flush(path)
   },
   /**
    * Gzip to a file.
    */
-  async gzipFile(source: string, target: string): Promise<void> {
-    return FileSystemModule.gzipFile(source, target)
+  gzipFile(source: string, target: string, options?: CancelableTaskOptions): Task<void> {
+    return runTask(taskId => FileSystemModule.gzipFile(source, target, { ...options, taskId }))
   },
   /**
    * UnGzip to a file.
    */
-  async unGzipFile(source: string, target: string): Promise<void> {
-    return FileSystemModule.unGzipFile(source, target)
+  unGzipFile(source: string, target: string, options?: CancelableTaskOptions): Task<void> {
+    return runTask(taskId => FileSystemModule.unGzipFile(source, target, { ...options, taskId }))
   },
   /**
    * Gzip string.
    *
    * Default encoding of `data` is assumed utf8.
    */
-  async gzipString(data: string, encoding: Encoding = 'utf8'): Promise<string> {
-    return FileSystemModule.gzipString(data, encoding)
+  async gzipString(data: string, encoding: Encoding = 'utf8', options?: TaskOptions): Promise<string> {
+    return FileSystemModule.gzipString(data, encoding, options ?? null)
   },
   /**
    * UnGzip string.
    *
    * Default encoding of `data` is assumed utf8.
    */
-  async unGzipString(data: string, encoding: Encoding = 'utf8'): Promise<string> {
-    return FileSystemModule.unGzipString(data, encoding)
+  async unGzipString(data: string, encoding: Encoding = 'utf8', options?: TaskOptions): Promise<string> {
+    return FileSystemModule.unGzipString(data, encoding, options ?? null)
   },
   /**
    * Get File hash string.
    *
    * Default algorithm is md5.
    */
-  async hash(path: string, algorithm: HashAlgorithm = 'md5'): Promise<string> {
-    return FileSystemModule.hash(path, algorithm)
+  hash(path: string, algorithm: HashAlgorithm = 'md5', options?: CancelableTaskOptions): Task<string> {
+    return runTask(taskId => FileSystemModule.hash(path, algorithm, { ...options, taskId }))
+  },
+  /**
+   * Search a file for a substring or a regular expression, the file is streamed in native code.
+   *
+   * Literal patterns are matched on the bytes, case-insensitive matching of a literal folds ASCII only
+   * unless the pattern has other characters. Regex patterns are matched per line.
+   */
+  search(path: string, pattern: string, options?: SearchOptions): Task<SearchMatch[]> {
+    return runTask(taskId => FileSystemModule.search(path, pattern, { ...options, taskId }))
+  },
+  /**
+   * Cancel a running task of cp, mv, unlink, gzipFile, unGzipFile, hash, search, lsStream, walk or du.
+   *
+   * Returns false if the task is already finished.
+   */
+  async cancel(taskId: string): Promise<boolean> {
+    return FileSystemModule.cancel(taskId)
+  },
+  /**
+   * Open a file and get a handle for `read`, `write`, `seek` and `close`.
+   *
+   * Handles idle for 60 seconds are closed automatically, at most 64 handles can be open at once.
+   */
+  async open(path: string, mode: OpenMode = 'r'): Promise<number> {
+    return FileSystemModule.open(path, mode)
+  },
+  /**
+   * Read up to `length` bytes from the current position of a handle.
+   *
+   * Resolves null at the end of the file.
+   */
+  async read(handle: number, length: number, encoding: Encoding = 'utf8'): Promise<string | null> {
+    return FileSystemModule.read(handle, length, encoding)
+  },
+  /**
+   * Write to the current position of a handle.
+   *
+   * Resolves the number of bytes written.
+   */
+  async write(handle: number, data: string, encoding: Encoding = 'utf8'): Promise<number> {
+    return FileSystemModule.write(handle, data, encoding)
+  },
+  /**
+   * Move the position of a handle.
+   *
+   * Resolves the new position.
+   */
+  async seek(handle: number, offset: number, whence: SeekWhence = 'set'): Promise<number> {
+    return FileSystemModule.seek(handle, offset, whence)
+  },
+  /**
+   * Close a handle.
+   */
+  async close(handle: number): Promise<void> {
+    return FileSystemModule.close(handle)
+  },
+  /**
+   * Run many operations in one call.
+   *
+   * Results are in the order of `ops`, a failed operation does not fail the others.
+   */
+  async batch(ops: BatchOp[], options?: BatchOptions): Promise<BatchResult[]> {
+    return FileSystemModule.batch(ops, options ?? null)
+  },
+  /**
+   * Listen to the progress of cp, mv, gzipFile, unGzipFile, hash and search tasks.
+   *
+   * Events are throttled and only sent while at least one listener is registered.
+   */
+  onProgress(listener: (event: ProgressEvent) => void): EmitterSubscription {
+    return getEventEmitter().addListener('progress', listener)
   },
 }